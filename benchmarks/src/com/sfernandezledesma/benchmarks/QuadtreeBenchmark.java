@@ -0,0 +1,144 @@
+/*
+ * QuadtreeBenchmark.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.benchmarks;
+
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.CollisionQuadtree;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+// Adds, updates and queries on a quadtree full of boxes, for strict and loose trees. The query benchmark also
+// reports how many candidates each query returns.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuadtreeBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"1.0", "2.0"})
+    public double looseness;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    // Tile aligned 16x16 boxes on floors, or boxes of random sizes scattered around
+    @Param({"TILE_FLOOR", "RANDOM_SCATTER"})
+    public Scenes.Scene scene;
+
+    private CollisionQuadtree quadtree;
+    private BenchmarkEntity[] entities;
+    private BenchmarkEntity[] extraEntities;
+    private AABB[] queries;
+    private Array<Entity> candidates = new Array<Entity>(false, 64);
+    private int next = 0;
+    private double step = 1;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Candidates {
+        public long candidates;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        double worldSide = Math.ceil(Math.sqrt(size)) * 32 + 64;
+        quadtree = new CollisionQuadtree(0, new AABB(0, 0, worldSide, worldSide), null, looseness);
+        entities = new BenchmarkEntity[size];
+        for (int i = 0; i < size; i++) {
+            entities[i] = new BenchmarkEntity(randomBox(random, worldSide));
+            quadtree.add(entities[i]);
+        }
+        extraEntities = new BenchmarkEntity[QUERIES];
+        queries = new AABB[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            extraEntities[i] = new BenchmarkEntity(randomBox(random, worldSide));
+            queries[i] = new AABB(16 + random.nextDouble() * (worldSide - 48), 16 + random.nextDouble() * (worldSide - 48), 10, 16);
+        }
+    }
+
+    private AABB randomBox(Random random, double worldSide) {
+        if (scene == Scenes.Scene.TILE_FLOOR) {
+            int tiles = (int) (worldSide / 16) - 2;
+            return new AABB(16 + 16 * random.nextInt(tiles), 16 + 48 * random.nextInt(tiles / 3), 16, 16);
+        }
+        double width = 4 + random.nextInt(61);
+        double height = 4 + random.nextInt(61);
+        return new AABB(16 + random.nextDouble() * (worldSide - width - 32), 16 + random.nextDouble() * (worldSide - height - 32), width, height);
+    }
+
+    @Benchmark
+    public CollisionQuadtree addAndRemove() {
+        BenchmarkEntity e = extraEntities[next++ & (QUERIES - 1)];
+        quadtree.add(e);
+        e.getQuadtree().remove(e);
+        return quadtree;
+    }
+
+    // Small moves back and forth, like entities walking around
+    @Benchmark
+    public boolean update() {
+        int i = next++;
+        if (i == entities.length) {
+            next = i = 0;
+            step = -step;
+        }
+        return entities[i].translateX(step);
+    }
+
+    @Benchmark
+    public Array<Entity> query(Candidates counters) {
+        candidates.clear();
+        quadtree.collectPossibleCollidingEntities(queries[next++ & (QUERIES - 1)], candidates);
+        counters.candidates += candidates.size;
+        return candidates;
+    }
+
+    private static class BenchmarkEntity extends Entity {
+        BenchmarkEntity(AABB box) {
+            super(box, 0, 0, false, null);
+        }
+
+        @Override
+        protected boolean resolveCollisionOf(Entity entity, float delta) {
+            return true;
+        }
+
+        @Override
+        public void render(SpriteBatch batch) {
+        }
+    }
+}
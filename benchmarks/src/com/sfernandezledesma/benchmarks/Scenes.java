@@ -0,0 +1,118 @@
+/*
+ * Scenes.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.benchmarks;
+
+
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.graphics.NullSprite;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
+import com.sfernandezledesma.world.World;
+
+import java.util.Random;
+
+// Synthetic worlds for the benchmarks. They don't need textures nor a GL context, and are closed by solid tiles
+// so nothing ever leaves the world.
+public class Scenes {
+    public enum Scene {MOVING_WALLS, RANDOM_SCATTER, TILE_FLOOR}
+
+    private static final int TILE = TileMap.TILE_SIZE;
+    // Scenes run without graphics, every body shares it
+    private static final NullSprite SPRITE = new NullSprite(TILE, TILE, 0, 0);
+
+    public static World build(Scene scene, int size, long seed) {
+        Random random = new Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(size));
+        switch (scene) {
+            default:
+            case MOVING_WALLS:
+                return movingWalls(side, size);
+            case RANDOM_SCATTER:
+                return randomScatter(side, size, random);
+            case TILE_FLOOR:
+                return tileFloor(side, size, random);
+        }
+    }
+
+    // Like PlayingScreen.testMovingWalls, a packed block of walls moving diagonally, with room to move
+    private static World movingWalls(int side, int size) {
+        World world = closedWorld(side * TILE * 2 + 4 * TILE);
+        int created = 0;
+        for (int i = 0; i < side && created < size; i++) {
+            for (int j = 0; j < side && created < size; j++, created++) {
+                DynamicEntity wall = new DynamicEntity(new AABB(side * TILE + TILE * i, side * TILE + TILE * j, TILE, TILE), SPRITE, false, world);
+                wall.setVelocityX(-10);
+                wall.setVelocityY(-10);
+            }
+        }
+        return world;
+    }
+
+    // Boxes of different sizes on a jittered grid, so they start apart, moving in random directions
+    private static World randomScatter(int side, int size, Random random) {
+        int spacing = 2 * TILE;
+        World world = closedWorld(side * spacing + 2 * TILE);
+        for (int i = 0; i < size; i++) {
+            double width = 4 + random.nextInt(TILE - 3);
+            double height = 4 + random.nextInt(TILE - 3);
+            double x = TILE + (i % side) * spacing + random.nextDouble() * (spacing - width);
+            double y = TILE + (i / side) * spacing + random.nextDouble() * (spacing - height);
+            DynamicEntity box = new DynamicEntity(new AABB(x, y, width, height), SPRITE, false, world);
+            box.setVelocityX(random.nextDouble() * 100 - 50);
+            box.setVelocityY(random.nextDouble() * 100 - 50);
+        }
+        return world;
+    }
+
+    // Floors of tiles with a few gaps every four rows, and hero sized bodies falling on them
+    private static World tileFloor(int side, int size, Random random) {
+        int spacing = 2 * TILE;
+        World world = closedWorld(side * spacing + 2 * TILE);
+        TileMap tileMap = world.getTileMap();
+        for (int row = 4; row < tileMap.getRows() - 1; row += 4) {
+            for (int column = 1; column < tileMap.getColumns() - 1; column++) {
+                if (random.nextInt(8) != 0)
+                    tileMap.setTile(column, row, random.nextInt(4) == 0 ? TileMap.ONE_WAY : TileMap.SOLID);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            double x = TILE + (i % side) * spacing + random.nextDouble() * (spacing - 10);
+            double y = TILE + (i / side) * spacing;
+            if (tileMap.getTile(tileMap.columnOf(x), tileMap.rowOf(y)) != TileMap.EMPTY
+                    || tileMap.getTile(tileMap.columnOf(x + 10), tileMap.rowOf(y)) != TileMap.EMPTY)
+                y += TILE; // Never start inside a floor
+            DynamicEntity body = new DynamicEntity(new AABB(x, y, 10, TILE), SPRITE, false, world);
+            body.setVelocityX(random.nextDouble() * 200 - 100);
+            body.setAccelerationY(-400);
+        }
+        return world;
+    }
+
+    private static World closedWorld(int pixels) {
+        int tiles = (pixels + TILE - 1) / TILE;
+        World world = new World(tiles * TILE, tiles * TILE, null);
+        TileMap tileMap = world.getTileMap();
+        for (int i = 0; i < tiles; i++) {
+            tileMap.setTile(i, 0, TileMap.SOLID);
+            tileMap.setTile(i, tiles - 1, TileMap.SOLID);
+            tileMap.setTile(0, i, TileMap.SOLID);
+            tileMap.setTile(tiles - 1, i, TileMap.SOLID);
+        }
+        return world;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * WalkabilityBenchmark.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.benchmarks;
+
+
+import com.sfernandezledesma.Platformer;
+import com.sfernandezledesma.physics.TileCollisionMap;
+import com.sfernandezledesma.world.CaveGenerator;
+import com.sfernandezledesma.world.WalkabilityGraph;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// What a level transition would pay for a generated cave of size x size tiles: carving it, building its walkability
+// graph and repairing it with ladders. Also reachability queries on the repaired graph, which is most of what repair
+// asks for. The repair benchmark reports how many ladders it placed.
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class WalkabilityBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"250", "500", "1000"})
+    public int size;
+
+    private byte[] tiles;
+    private WalkabilityGraph graph;
+    private int[] from;
+    private int[] to;
+    private int next = 0;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Ladders {
+        public long ladders;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tiles = CaveGenerator.carve(size, size, 42);
+        graph = new WalkabilityGraph(CaveGenerator.generate(size, size, 42), Platformer.getTimeStep());
+        graph.repair();
+        Random random = new Random(42);
+        from = new int[QUERIES];
+        to = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            from[i] = random.nextInt(graph.getNodeCount());
+            to[i] = random.nextInt(graph.getNodeCount());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] carve() {
+        return CaveGenerator.carve(size, size, 42);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WalkabilityGraph buildAndRepair(Ladders counters) {
+        TileCollisionMap tileMap = new TileCollisionMap(size, size);
+        tileMap.setTiles(ByteBuffer.wrap(tiles));
+        WalkabilityGraph walkability = new WalkabilityGraph(tileMap, Platformer.getTimeStep());
+        counters.ladders += walkability.repair();
+        return walkability;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public boolean isReachable() {
+        int i = next++ & (QUERIES - 1);
+        return graph.isReachable(from[i], to[i]);
+    }
+}
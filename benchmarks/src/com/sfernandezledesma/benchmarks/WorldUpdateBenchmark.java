@@ -0,0 +1,80 @@
+/*
+ * WorldUpdateBenchmark.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.benchmarks;
+
+
+import com.sfernandezledesma.world.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One World.update of a whole scene per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldUpdateBenchmark {
+    private static final float DELTA = 1f / 60f;
+
+    @Param({"MOVING_WALLS", "RANDOM_SCATTER", "TILE_FLOOR"})
+    public Scenes.Scene scene;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    // 0 updates entities one by one, otherwise islands are updated in parallel with that many threads
+    @Param({"0", "4"})
+    public int islandThreads;
+
+    // Whether the physics state of the dynamic entities is packed in the world, see World.enableBodyStore
+    @Param({"false", "true"})
+    public boolean bodyStore;
+
+    private World world;
+
+    // Rebuilt every iteration so the scene doesn't end up piled in a corner
+    @Setup(Level.Iteration)
+    public void setUp() {
+        world = Scenes.build(scene, size, 42);
+        if (islandThreads > 0)
+            world.enableParallelIslands(islandThreads);
+        if (bodyStore)
+            world.enableBodyStore();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public World update() {
+        world.update(DELTA);
+        return world;
+    }
+}
@@ -17,15 +17,29 @@
 
 package com.sfernandezledesma;
 
+import com.badlogic.gdx.Application;
 import com.badlogic.gdx.Game;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.sfernandezledesma.screens.LoadingScreen;
 import com.sfernandezledesma.screens.PlayingScreen;
+import com.sfernandezledesma.world.LevelLoader;
 
 
 public class Platformer extends Game {
-    private static final float MAX_DELTA = 1f / 30f;
+    // The world is always updated TICKS_PER_SECOND times per second, regardless of the frame rate
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int MAX_SUBSTEPS = 5;
+    // Update the world in a worker thread while drawing, where there are threads
+    private static final boolean THREADED_SIMULATION = true;
+    // Levels with more tiles than this only keep the chunks around the camera loaded, this many chunks away
+    private static final int MAX_LOADED_TILES = 1 << 20;
+    private static final int CHUNK_RADIUS = 2;
+    // Size of the generated cave levels, and how many threads carve them
+    private static final int GENERATED_COLUMNS = 128;
+    private static final int GENERATED_ROWS = 72;
+    private static final int GENERATOR_THREADS = 2;
     private static final int WINDOW_WIDTH = 1024;
     private static final int WINDOW_HEIGHT = 576;
     private static final int VIEWPORT_WIDTH = WINDOW_WIDTH / 2;
@@ -33,6 +47,15 @@ public class Platformer extends Game {
     private static final String TITLE = "Yet Another Platformer!";
     private SpriteBatch batch;
     private AssetManager assetManager;
+    private LevelLoader levelLoader;
+
+    public Platformer() {
+        this(LevelLoader.READ_WHOLE_FILE);
+    }
+
+    public Platformer(LevelLoader levelLoader) {
+        this.levelLoader = levelLoader;
+    }
 
     @Override
     public void create() {
@@ -76,11 +99,43 @@ public class Platformer extends Game {
         return TITLE;
     }
 
-    public static float getMaxDelta() {
-        return MAX_DELTA;
+    public static float getTimeStep() {
+        return 1f / TICKS_PER_SECOND;
+    }
+
+    public static int getMaxSubsteps() {
+        return MAX_SUBSTEPS;
+    }
+
+    public static boolean isSimulationThreaded() {
+        return THREADED_SIMULATION && Gdx.app.getType() != Application.ApplicationType.WebGL;
+    }
+
+    public static int getMaxLoadedTiles() {
+        return MAX_LOADED_TILES;
+    }
+
+    public static int getChunkRadius() {
+        return CHUNK_RADIUS;
+    }
+
+    public static int getGeneratedColumns() {
+        return GENERATED_COLUMNS;
+    }
+
+    public static int getGeneratedRows() {
+        return GENERATED_ROWS;
+    }
+
+    public static int getGeneratorThreads() {
+        return GENERATOR_THREADS;
     }
 
     public AssetManager getAssetManager() {
         return assetManager;
     }
+
+    public LevelLoader getLevelLoader() {
+        return levelLoader;
+    }
 }
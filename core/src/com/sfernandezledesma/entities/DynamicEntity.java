@@ -19,23 +19,51 @@ package com.sfernandezledesma.entities;
 
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
 import com.sfernandezledesma.graphics.GameSprite;
 import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
+import com.sfernandezledesma.world.DynamicBodyStore;
 import com.sfernandezledesma.world.World;
 
-import java.util.List;
-
 public class DynamicEntity extends Entity {
+    // Islands up to this size don't need the quadtree to find collision candidates
+    private static final int SMALL_ISLAND = 16;
     protected double velocityX = 0;
     protected double velocityY = 0;
     protected double accelerationX = 0;
     protected double accelerationY = 0;
     protected boolean updating = false;
+    // Set by prepareUpdate, so update doesn't run updateBeforeMoving again
+    private boolean prepared = false;
     protected AABB newBox;
+    // Where the entity was before the last world update, so it can be drawn between two physics states
+    private double previousX;
+    private double previousY;
+    // When the world keeps physics state in a DynamicBodyStore the fields above are unused, and this is our slot
+    // there and our box
+    private DynamicBodyStore.Body body = null;
+    // Reused on every broad-phase query so moving doesn't allocate. Each entity needs its own because
+    // onCollisionWithDynamicEntity may update another entity while we are still iterating ours.
+    private final Array<Entity> collisionCandidates = new Array<Entity>(false, 16);
+    private final AABB tileBox = new AABB(0, 0, 0, 0);
+    // What is in the way of the current move, see moveAndCollide
+    private int hitCount = 0;
+    private int[] hitOrder = new int[0];
+    private double[] hitEntries = new double[0];
+    private int[] hitColumns = new int[0];
+    private int[] hitRows = new int[0];
+    // Only used when the world updates islands in parallel, see IslandSolver
+    private final AABB sweptBox = new AABB(0, 0, 0, 0);
+    private final AABB islandQueryBox = new AABB(0, 0, 0, 0);
+    private Array<DynamicEntity> island = null;
+    private double islandSweep = 0;
+    private int islandIndex = -1;
 
     public DynamicEntity(AABB box, GameSprite gameSprite, boolean centerPosition, World world) {
         super(box, gameSprite, centerPosition, world);
         newBox = new AABB(box);
+        savePreviousPosition();
         world.addDynamicEntity(this);
     }
 
@@ -50,16 +78,61 @@ public class DynamicEntity extends Entity {
         return newBox.overlapsWith(otherDynamicEntity.box); // We return true if we are still colliding
     }
 
+    // Same dispatch StaticEntity, OneWayPlatform and Ladder do in resolveCollisionOf, for tiles of the TileMap
+    private boolean resolveCollisionWithTile(byte tile, AABB tileBox, float delta) {
+        switch (tile) {
+            case TileMap.SOLID:
+                return onCollisionWithStaticEntity(tileBox, delta);
+            case TileMap.ONE_WAY:
+                return onCollisionWithOneWayPlatform(tileBox, delta);
+            case TileMap.LADDER:
+                return onCollisionWithLadder(tileBox, delta);
+            default:
+                return false;
+        }
+    }
+
     @Override
     public void render(SpriteBatch batch)  {
-        gameSprite.setPosition((float) getX(), (float) getY());
-        gameSprite.draw(batch);
+        render(batch, 1f);
+    }
+
+    @Override
+    public void render(SpriteBatch batch, float alpha) {
+        double x = previousX + (getX() - previousX) * alpha;
+        double y = previousY + (getY() - previousY) * alpha;
+        gameSprite.draw(batch, (float) x, (float) y);
+    }
+
+    // Called by the world before each update
+    public void savePreviousPosition() {
+        previousX = getX();
+        previousY = getY();
+    }
+
+    public double getPreviousX() {
+        return previousX;
+    }
+
+    public double getPreviousY() {
+        return previousY;
     }
 
     // This is called inside update, before moving the entity
     protected void updateBeforeMoving(float delta) {
-        velocityX += accelerationX * delta;
-        velocityY += accelerationY * delta;
+        if (body == null) {
+            velocityX += accelerationX * delta;
+            velocityY += accelerationY * delta;
+        } else if (!body.isIntegratedInBatch()) {
+            body.setVelocityX(body.getVelocityX() + body.getAccelerationX() * delta);
+            body.setVelocityY(body.getVelocityY() + body.getAccelerationY() * delta);
+        }
+    }
+
+    // Whether the body store can integrate this entity together with the rest before updating any of them.
+    // Entities that override updateBeforeMoving and don't always integrate must return false.
+    public boolean canBeIntegratedInBatch() {
+        return true;
     }
 
     // This is called inside update, after moving the entity
@@ -72,105 +145,305 @@ public class DynamicEntity extends Entity {
             return;
         setUpdating(true);
         // First we update velocities, handle input, etc
-        updateBeforeMoving(delta);
+        if (!prepared)
+            updateBeforeMoving(delta);
+        prepared = false;
         // Now we try to move horizontally
         boolean collidedHorizontally = moveAndCollideHorizontally(delta);
         // Now we try to move vertically
         boolean collidedVertically = moveAndCollideVertically(delta);
         // Finally we update the entity after it moved
         updateAfterMoving(collidedHorizontally, collidedVertically, delta);
+        gameSprite.update(delta);
     }
 
-    // Moves horizontally colliding with other entities.
-    private boolean moveAndCollideHorizontally(float delta) {
-        double dx = velocityX * delta;
-        newBox.syncPositionWith(box);
-        newBox.translateX(dx);
-        double minimumCollidingLeftSideX = Double.MAX_VALUE;
-        double maximumCollidingRightSideX = -Double.MAX_VALUE;
-        boolean collidesWithSomething = false;
-        List<Entity> entitiesToCollide = quadtree.getPossibleCollidingEntities(newBox);
-        //Gdx.app.log("DYNAMIC ENTITY", "Checking collision with " + entitiesToCollide.size() + " possible entities.");
-        for (Entity otherEntity : entitiesToCollide) {
-            if (otherEntity.equals(this))
-                continue;
-            if (newBox.overlapsWith(otherEntity.getBox())) {
-                if (otherEntity.resolveCollisionOf(this, delta)) {
-                    collidesWithSomething = true;
-                    minimumCollidingLeftSideX = Math.min(minimumCollidingLeftSideX, otherEntity.getBox().leftSideX());
-                    maximumCollidingRightSideX = Math.max(maximumCollidingRightSideX, otherEntity.getBox().rightSideX());
+    // Runs the first part of update ahead of time, so the velocities are known before anything moves
+    public void prepareUpdate(float delta) {
+        updateBeforeMoving(delta);
+        prepared = true;
+    }
+
+    // After prepareUpdate, the box covering everything the entity can go through during update.
+    // Collisions can only stop it, so it never leaves this box. Returns how far it can move.
+    public double computeSweptBox(float delta, double margin) {
+        double dx = getVelocityX() * delta;
+        double dy = getVelocityY() * delta;
+        sweptBox.set(box.getX() + Math.min(0, dx) - margin, box.getY() + Math.min(0, dy) - margin,
+                box.getWidth() + Math.abs(dx) + 2 * margin, box.getHeight() + Math.abs(dy) + 2 * margin);
+        return Math.max(Math.abs(dx), Math.abs(dy));
+    }
+
+    // Only the static index and the other entities in the island are checked for collisions while it is set.
+    // Small islands are just checked whole. In big ones the quadtree, which doesn't change while islands are being
+    // updated, finds the entities whose swept box can reach newBox, and those of other islands are skipped.
+    // Only candidates already overlapping newBox are kept, and they are sorted by ID so collisions are resolved in
+    // the same order whatever the quadtree looks like.
+    private void collectCollisionCandidates() {
+        collisionCandidates.clear();
+        if (island == null) {
+            world.collectPossibleCollidingEntities(newBox, collisionCandidates);
+        } else {
+            world.collectPossibleCollidingStaticEntities(newBox, collisionCandidates);
+            if (island.size <= SMALL_ISLAND) {
+                collisionCandidates.addAll(island);
+            } else {
+                int staticCandidates = collisionCandidates.size;
+                islandQueryBox.set(newBox.getX() - islandSweep, newBox.getY() - islandSweep,
+                        newBox.getWidth() + 2 * islandSweep, newBox.getHeight() + 2 * islandSweep);
+                world.getQuadtree().collectPossibleCollidingEntities(islandQueryBox, collisionCandidates);
+                int kept = staticCandidates;
+                for (int i = staticCandidates; i < collisionCandidates.size; i++) {
+                    DynamicEntity other = (DynamicEntity) collisionCandidates.get(i);
+                    if (other.island == island)
+                        collisionCandidates.set(kept++, other);
                 }
+                collisionCandidates.truncate(kept);
             }
         }
-        if (collidesWithSomething) { // We fix its position and keep the invariant
-            //Gdx.app.log("COLLISION INFO", "Collided horizontally.");
-            if (velocityX > 0) { // The entity was colliding to the other from the left
-                setX(minimumCollidingLeftSideX - box.getWidth());
-            } else { // The entity was colliding from the right
-                setX(maximumCollidingRightSideX);
-            }
-            velocityX = 0;
-        } else {
-            setX(newBox.getX());
+        int kept = 0;
+        for (int i = 0; i < collisionCandidates.size; i++) {
+            Entity other = collisionCandidates.get(i);
+            if (other != this && newBox.overlapsWith(other.getBox()))
+                collisionCandidates.set(kept++, other);
         }
-        return collidesWithSomething;
+        collisionCandidates.truncate(kept);
+        Entity.sortByID(collisionCandidates);
+    }
+
+    // Moves horizontally colliding with other entities.
+    private boolean moveAndCollideHorizontally(float delta) {
+        return moveAndCollide(true, delta);
     }
 
     // Moves vertically colliding with other entities.
     private boolean moveAndCollideVertically(float delta) {
-        double dy = velocityY * delta;
-        newBox.syncPositionWith(box);
-        newBox.translateY(dy);
-        double minimumCollidingBottomSideY = Double.MAX_VALUE;
-        double maximumCollidingTopSideY = -Double.MAX_VALUE;
+        return moveAndCollide(false, delta);
+    }
+
+    // Continuous collision along one axis: newBox is the box swept from where the entity is to where it wants to go,
+    // so nothing in between is skipped however far it moves in one step. What it finds there is resolved in the
+    // order it would be reached (entities before tiles and lower IDs first when they are as far), and only until
+    // something stops the entity, because whatever is behind that is never reached.
+    private boolean moveAndCollide(boolean horizontally, float delta) {
+        double distance = (horizontally ? getVelocityX() : getVelocityY()) * delta;
+        if (horizontally)
+            newBox.set(box.getX() + Math.min(0, distance), box.getY(), box.getWidth() + Math.abs(distance), box.getHeight());
+        else
+            newBox.set(box.getX(), box.getY() + Math.min(0, distance), box.getWidth(), box.getHeight() + Math.abs(distance));
+        collectCollisionCandidates();
+        //Gdx.app.log("DYNAMIC ENTITY", "Checking collision with " + collisionCandidates.size + " possible entities.");
+        collectHits(horizontally, distance);
+        double minimumCollidingSide = Double.MAX_VALUE;
+        double maximumCollidingSide = -Double.MAX_VALUE;
+        double stoppedAt = Double.MAX_VALUE;
         boolean collidesWithSomething = false;
-        List<Entity> entitiesToCollide = quadtree.getPossibleCollidingEntities(newBox);
-        //Gdx.app.log("DYNAMIC ENTITY", "Checking collision with " + entitiesToCollide.size() + " possible entities.");
-        for (Entity otherEntity : entitiesToCollide) {
-            if (otherEntity.equals(this))
-                continue;
-            if (newBox.overlapsWith(otherEntity.getBox())) {
-                if (otherEntity.resolveCollisionOf(this, delta)) {
-                    collidesWithSomething = true;
-                    minimumCollidingBottomSideY = Math.min(minimumCollidingBottomSideY, otherEntity.getBox().bottomSideY());
-                    maximumCollidingTopSideY = Math.max(maximumCollidingTopSideY, otherEntity.getBox().topSideY());
+        TileMap tileMap = world.getTileMap();
+        for (int i = 0; i < hitCount && hitEntries[hitOrder[i]] <= stoppedAt; i++) {
+            int hit = hitOrder[i];
+            AABB otherBox;
+            boolean collides;
+            if (hit < collisionCandidates.size) {
+                Entity otherEntity = collisionCandidates.get(hit);
+                otherBox = otherEntity.getBox();
+                // It may have been pushed out of the way by an earlier collision
+                collides = newBox.overlapsWith(otherBox) && otherEntity.resolveCollisionOf(this, delta);
+            } else {
+                int column = hitColumns[hit], row = hitRows[hit];
+                otherBox = tileMap.getTileBox(column, row, tileBox);
+                collides = resolveCollisionWithTile(tileMap.getTile(column, row), otherBox, delta);
+            }
+            if (collides) {
+                collidesWithSomething = true;
+                // Measured again, a dynamic entity may have moved a bit but not enough
+                stoppedAt = Math.min(stoppedAt, entryDistance(otherBox, horizontally, distance));
+                if (horizontally) {
+                    minimumCollidingSide = Math.min(minimumCollidingSide, otherBox.leftSideX());
+                    maximumCollidingSide = Math.max(maximumCollidingSide, otherBox.rightSideX());
+                } else {
+                    minimumCollidingSide = Math.min(minimumCollidingSide, otherBox.bottomSideY());
+                    maximumCollidingSide = Math.max(maximumCollidingSide, otherBox.topSideY());
                 }
             }
         }
-        if (collidesWithSomething) { // We fix its position and keep the invariant
-            //Gdx.app.log("COLLISION INFO", "Collided vertically.");
-            if (velocityY > 0) { // The entity was colliding to the other from below
-                setY(minimumCollidingBottomSideY - box.getHeight());
-            } else { // The entity was colliding from above
-                setY(maximumCollidingTopSideY);
+        if (horizontally) {
+            if (collidesWithSomething) { // We fix its position and keep the invariant
+                //Gdx.app.log("COLLISION INFO", "Collided horizontally.");
+                if (getVelocityX() > 0) { // The entity was colliding to the other from the left
+                    setX(minimumCollidingSide - box.getWidth());
+                } else { // The entity was colliding from the right
+                    setX(maximumCollidingSide);
+                }
+                setVelocityX(0);
+            } else {
+                setX(box.getX() + distance);
             }
-            velocityY = 0;
         } else {
-            setY(newBox.getY());
+            if (collidesWithSomething) {
+                //Gdx.app.log("COLLISION INFO", "Collided vertically.");
+                if (getVelocityY() > 0) { // The entity was colliding to the other from below
+                    setY(minimumCollidingSide - box.getHeight());
+                } else { // The entity was colliding from above
+                    setY(maximumCollidingSide);
+                }
+                setVelocityY(0);
+            } else {
+                setY(box.getY() + distance);
+            }
         }
         return collidesWithSomething;
     }
 
+    // Fills the hits with the collision candidates and the tiles overlapping newBox, sorted by entry distance.
+    // Hits below collisionCandidates.size are candidates, the rest are tiles.
+    private void collectHits(boolean horizontally, double distance) {
+        TileMap tileMap = world.getTileMap();
+        int firstColumn = tileMap.firstColumn(newBox), lastColumn = tileMap.lastColumn(newBox);
+        int firstRow = tileMap.firstRow(newBox), lastRow = tileMap.lastRow(newBox);
+        int maxHits = collisionCandidates.size + Math.max(0, lastColumn - firstColumn + 1) * Math.max(0, lastRow - firstRow + 1);
+        if (hitOrder.length < maxHits) {
+            int length = Math.max(maxHits, 2 * hitOrder.length);
+            hitOrder = new int[length];
+            hitEntries = new double[length];
+            hitColumns = new int[length];
+            hitRows = new int[length];
+        }
+        hitCount = 0;
+        int kept = 0;
+        for (int i = 0; i < collisionCandidates.size; i++) {
+            Entity otherEntity = collisionCandidates.get(i);
+            if (isBehind(otherEntity.getBox(), horizontally, distance))
+                continue;
+            collisionCandidates.set(kept++, otherEntity);
+            addHit(entryDistance(otherEntity.getBox(), horizontally, distance));
+        }
+        collisionCandidates.truncate(kept);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (tileMap.getTile(column, row) == TileMap.EMPTY)
+                    continue;
+                tileMap.getTileBox(column, row, tileBox);
+                if (!newBox.overlapsWith(tileBox) || isBehind(tileBox, horizontally, distance))
+                    continue;
+                hitColumns[hitCount] = column;
+                hitRows[hitCount] = row;
+                addHit(entryDistance(tileBox, horizontally, distance));
+            }
+        }
+    }
+
+    // Insertion sort as hits arrive, there are only a few and candidates come sorted by ID, which is kept for ties
+    private void addHit(double entry) {
+        int hit = hitCount++;
+        hitEntries[hit] = entry;
+        int i = hit - 1;
+        while (i >= 0 && hitEntries[hitOrder[i]] > entry) {
+            hitOrder[i + 1] = hitOrder[i];
+            i--;
+        }
+        hitOrder[i + 1] = hit;
+    }
+
+    // Whether otherBox is only touching the side the entity moves away from. The swept box is one sum off from the
+    // box there, so rounding could make them overlap.
+    private boolean isBehind(AABB otherBox, boolean horizontally, double distance) {
+        if (distance == 0)
+            return false;
+        if (horizontally)
+            return distance > 0 ? otherBox.rightSideX() <= box.leftSideX() : otherBox.leftSideX() >= box.rightSideX();
+        else
+            return distance > 0 ? otherBox.topSideY() <= box.bottomSideY() : otherBox.bottomSideY() >= box.topSideY();
+    }
+
+    // How far the entity has to move along the axis to touch otherBox, negative if they already overlap on it
+    private double entryDistance(AABB otherBox, boolean horizontally, double distance) {
+        if (distance == 0)
+            return 0;
+        if (horizontally)
+            return distance > 0 ? otherBox.leftSideX() - box.rightSideX() : box.leftSideX() - otherBox.rightSideX();
+        else
+            return distance > 0 ? otherBox.bottomSideY() - box.topSideY() : box.bottomSideY() - otherBox.topSideY();
+    }
+
+    public double getVelocityX() {
+        return body == null ? velocityX : body.getVelocityX();
+    }
+
+    public double getVelocityY() {
+        return body == null ? velocityY : body.getVelocityY();
+    }
+
     public void setVelocityX(double vx) {
-        velocityX = vx;
+        if (body == null)
+            velocityX = vx;
+        else
+            body.setVelocityX(vx);
     }
 
     public void setVelocityY(double vy) {
-        velocityY = vy;
+        if (body == null)
+            velocityY = vy;
+        else
+            body.setVelocityY(vy);
     }
 
     public void setAccelerationX(double ax) {
-        accelerationX = ax;
+        if (body == null)
+            accelerationX = ax;
+        else
+            body.setAccelerationX(ax);
     }
 
     public void setAccelerationY(double ay) {
-        accelerationY = ay;
+        if (body == null)
+            accelerationY = ay;
+        else
+            body.setAccelerationY(ay);
+    }
+
+    // Moves the current physics state into the store, from now on this entity is just a handle to it
+    public void attachToBodyStore(DynamicBodyStore store) {
+        body = store.add(box, canBeIntegratedInBatch());
+        body.setVelocityX(velocityX);
+        body.setVelocityY(velocityY);
+        body.setAccelerationX(accelerationX);
+        body.setAccelerationY(accelerationY);
+        box = body;
+    }
+
+    public void detachFromBodyStore() {
+        if (body == null)
+            return;
+        velocityX = body.getVelocityX();
+        velocityY = body.getVelocityY();
+        accelerationX = body.getAccelerationX();
+        accelerationY = body.getAccelerationY();
+        box = new AABB(body);
+        body.getStore().remove(body);
+        body = null;
     }
 
     public boolean isUpdating() {
         return updating;
     }
 
+    public AABB getSweptBox() {
+        return sweptBox;
+    }
+
+    // sweep is how far any entity can move in this update
+    public void setIsland(Array<DynamicEntity> island, double sweep) {
+        this.island = island;
+        this.islandSweep = sweep;
+    }
+
+    public int getIslandIndex() {
+        return islandIndex;
+    }
+
+    public void setIslandIndex(int islandIndex) {
+        this.islandIndex = islandIndex;
+    }
+
     public void setUpdating(boolean updating) {
         this.updating = updating;
     }
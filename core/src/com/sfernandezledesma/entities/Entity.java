@@ -19,27 +19,45 @@ package com.sfernandezledesma.entities;
 
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
 import com.sfernandezledesma.graphics.GameSprite;
 import com.sfernandezledesma.physics.AABB;
 import com.sfernandezledesma.physics.CollisionQuadtree;
 import com.sfernandezledesma.world.World;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 public abstract class Entity {
+    private static final int INSERTION_SORT_LIMIT = 32;
+    private static final Comparator<Object> BY_ID = new Comparator<Object>() {
+        @Override
+        public int compare(Object a, Object b) {
+            int idA = ((Entity) a).myID;
+            int idB = ((Entity) b).myID;
+            return idA < idB ? -1 : (idA == idB ? 0 : 1);
+        }
+    };
     private static int next_id = 1;
     protected int myID;
     protected AABB box;
-    protected GameSprite gameSprite;
+    protected GameSprite gameSprite = null;
     protected CollisionQuadtree quadtree = null;
     protected boolean toBeDestroyed = false;
     protected World world = null;
 
     public Entity(AABB box, GameSprite gameSprite, boolean centerPosition, World world) {
+        this(box, gameSprite.getScreenOffsetX(), gameSprite.getScreenOffsetY(), centerPosition, world);
+        this.gameSprite = gameSprite;
+    }
+
+    // For entities that don't have a sprite of their own, like the static ones
+    protected Entity(AABB box, float screenOffsetX, float screenOffsetY, boolean centerPosition, World world) {
         assignId();
         this.box = box;
-        this.gameSprite = gameSprite; // For now lets assume all entities have a sprite
         if (centerPosition) {
-            this.box.translateX(gameSprite.getScreenOffsetX());
-            this.box.translateY(gameSprite.getScreenOffsetY());
+            this.box.translateX(screenOffsetX);
+            this.box.translateY(screenOffsetY);
         }
         this.world = world;
         //Gdx.app.log("ENTITY INFO", "Created entity " + myID);
@@ -56,12 +74,12 @@ public abstract class Entity {
 
     public boolean setX(double x) {
         box.setX(x);
-        return quadtree.update(this);
+        return updateQuadtree();
     }
 
     public boolean setY(double y) {
         box.setY(y);
-        return quadtree.update(this);
+        return updateQuadtree();
     }
 
     public double getX() {
@@ -74,23 +92,40 @@ public abstract class Entity {
 
     public boolean translateX(double dx) {
         box.translateX(dx);
-        return quadtree.update(this);
+        return updateQuadtree();
     }
 
     public boolean translateY(double dy) {
         box.translateY(dy);
-        return quadtree.update(this);
+        return updateQuadtree();
+    }
+
+    // Static entities are not in any quadtree, their index is built once and they are not supposed to move.
+    // While islands are updated in parallel the world updates the quadtree afterwards, see IslandSolver.
+    private boolean updateQuadtree() {
+        return quadtree == null || (world != null && world.areQuadtreeUpdatesDeferred()) || quadtree.update(this);
     }
 
     protected abstract boolean resolveCollisionOf(Entity entity, float delta);
     protected boolean onCollisionWithDynamicEntity(DynamicEntity otherDynamicEntity, float delta) { return true; }
-    protected boolean onCollisionWithStaticEntity(StaticEntity otherStaticEntity, float delta) { return true; }
+    // Terrain only passes its box, it can be either a StaticEntity or a tile of the world's TileMap
+    protected boolean onCollisionWithStaticEntity(AABB staticBox, float delta) { return true; }
     protected boolean onCollisionWithHero(Hero hero, float delta) { return true; }
-    protected boolean onCollisionWithOneWayPlatform(OneWayPlatform oneWayPlatform, float delta) { return false; }
-    protected boolean onCollisionWithLadder(Ladder ladder, float delta) { return false; }
+    protected boolean onCollisionWithOneWayPlatform(AABB platformBox, float delta) { return false; }
+    protected boolean onCollisionWithLadder(AABB ladderBox, float delta) { return false; }
 
     public abstract void render(SpriteBatch batch);
 
+    // alpha is how far we are from the previous physics state (0) to the current one (1), only entities that move use it
+    public void render(SpriteBatch batch, float alpha) {
+        render(batch);
+    }
+
+    // Null for entities without a sprite of their own
+    public GameSprite getGameSprite() {
+        return gameSprite;
+    }
+
     public CollisionQuadtree getQuadtree() {
         return quadtree;
     }
@@ -126,4 +161,23 @@ public abstract class Entity {
     public int getID() {
         return myID;
     }
+
+    // Insertion sort for the usual small query results. Big ones (crowded nodes) go through Arrays.sort, which
+    // unlike Array.sort doesn't share state, so islands can sort in parallel.
+    public static void sortByID(Array<? extends Entity> entities) {
+        Object[] items = entities.items;
+        if (entities.size > INSERTION_SORT_LIMIT) {
+            Arrays.sort(items, 0, entities.size, BY_ID);
+            return;
+        }
+        for (int i = 1; i < entities.size; i++) {
+            Entity e = (Entity) items[i];
+            int j = i - 1;
+            while (j >= 0 && ((Entity) items[j]).myID > e.myID) {
+                items[j + 1] = items[j];
+                j--;
+            }
+            items[j + 1] = e;
+        }
+    }
 }
@@ -19,40 +19,102 @@ package com.sfernandezledesma.entities;
 
 
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.sfernandezledesma.graphics.Assets;
+import com.sfernandezledesma.graphics.FrameTable;
 import com.sfernandezledesma.graphics.GameAnimatedSprite;
 import com.sfernandezledesma.graphics.GameFixedSprite;
+import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.graphics.NullSprite;
+import com.sfernandezledesma.graphics.StaticGraphic;
 import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
 import com.sfernandezledesma.world.World;
 
 public class EntityFactory {
     public enum EntityName {HERO, GROUND, WALL, LADDER, ONEWAY}
 
     private World world;
-    private Texture tileset;
+    private TextureAtlas atlas = null;
+    // Terrain that doesn't fit in the tile map shares these, and so do the tiles
+    private StaticGraphic groundGraphic;
+    private StaticGraphic oneWayGraphic;
+    private StaticGraphic ladderGraphic;
+    // Shared by every hero sprite
+    private FrameTable heroFrames = null;
+    // Walls never change their sprite, so all of them share one
+    private GameSprite wallSprite = null;
 
+    // A world without an AssetManager gets entities with NullSprites, for running it without graphics
     public EntityFactory(World world) {
         this.world = world;
-        tileset = world.getAssetManager().get("simples_pimples.png", Texture.class);
+        if (world.getAssetManager() != null) {
+            atlas = world.getAssetManager().get(Assets.GAME_ATLAS, TextureAtlas.class);
+            heroFrames = GameAnimatedSprite.characterFrames(atlas.findRegions(Assets.HERO));
+        }
+        groundGraphic = staticGraphic(Assets.GROUND, 0);
+        oneWayGraphic = staticGraphic(Assets.ONE_WAY, 0);
+        ladderGraphic = staticGraphic(Assets.LADDER, 4);
+        world.getTileMapRenderer().setTileRegion(TileMap.SOLID, groundGraphic.getRegion());
+        world.getTileMapRenderer().setTileRegion(TileMap.ONE_WAY, oneWayGraphic.getRegion());
+        world.getTileMapRenderer().setTileRegion(TileMap.LADDER, ladderGraphic.getRegion());
     }
 
     public void createEntityInWorld(EntityName name, double x, double y) {
+        createEntityInWorld(name, x, y, 0, 0);
+    }
+
+    // The velocity is only used by entities that move on their own, like walls
+    public void createEntityInWorld(EntityName name, double x, double y, double velocityX, double velocityY) {
         switch (name) {
             case HERO:
-                new Hero(new AABB(x, y, 10, 16), new GameAnimatedSprite(tileset, 416, 16, 96, 16, 3, 0), true, world);
+                new Hero(new AABB(x, y, Hero.WIDTH, Hero.HEIGHT), atlas == null ? new NullSprite(16, 16, 3, 0) : new GameAnimatedSprite(heroFrames, 3, 0), true, world);
+                break;
+            case WALL:
+                if (wallSprite == null)
+                    wallSprite = atlas == null ? new NullSprite(16, 16, 0, 0) : new GameFixedSprite(groundGraphic.getRegion(), 0, 0);
+                DynamicEntity wall = new DynamicEntity(new AABB(x, y, 16, 16), wallSprite, true, world);
+                wall.setVelocityX(velocityX);
+                wall.setVelocityY(velocityY);
                 break;
             case GROUND:
-                new StaticEntity(new AABB(x, y, 16, 16), new GameFixedSprite(tileset, 16, 96, 16, 16, 0, 0), true, world);
+                if (tryPlacingTile(TileMap.SOLID, x, y))
+                    break;
+                new StaticEntity(new AABB(x, y, 16, 16), groundGraphic, true, world);
                 break;
             case ONEWAY:
-                new OneWayPlatform(new AABB(x, y, 16, 16), new GameFixedSprite(tileset, 32, 768, 16, 16, 0, 0), true, world);
+                if (tryPlacingTile(TileMap.ONE_WAY, x, y))
+                    break;
+                new OneWayPlatform(new AABB(x, y, 16, 16), oneWayGraphic, true, world);
                 break;
             case LADDER:
-                new Ladder(new AABB(x, y, 8, 16), new GameFixedSprite(tileset, 0, 192, 16, 16, 4, 0), true, world);
+                if (tryPlacingTile(TileMap.LADDER, x, y))
+                    break;
+                new Ladder(new AABB(x, y, 8, 16), ladderGraphic, true, world);
                 break;
         }
     }
 
+    // Terrain is part of the level, it comes out the same every time it's created. The rest may move away.
+    public static boolean isTerrain(EntityName name) {
+        return name == EntityName.GROUND || name == EntityName.ONEWAY || name == EntityName.LADDER;
+    }
+
+    private StaticGraphic staticGraphic(String regionName, float screenOffsetX) {
+        TextureRegion region = atlas == null ? null : atlas.findRegion(regionName);
+        return new StaticGraphic(region, 16, 16, screenOffsetX, 0);
+    }
+
+    // Terrain on the tile grid goes to the world's TileMap, anything else still needs its own entity
+    private boolean tryPlacingTile(byte tile, double x, double y) {
+        TileMap tileMap = world.getTileMap();
+        if (!tileMap.isAligned(x, y))
+            return false;
+        tileMap.setTile(tileMap.columnOf(x), tileMap.rowOf(y), tile);
+        return true;
+    }
+
     public World getWorld() {
         return world;
     }
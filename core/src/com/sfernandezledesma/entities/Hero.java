@@ -18,30 +18,39 @@
 package com.sfernandezledesma.entities;
 
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Input;
 import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.input.Controls;
 import com.sfernandezledesma.physics.AABB;
 import com.sfernandezledesma.world.World;
 
 public class Hero extends DynamicEntity {
-    private double horizontalVelocity = 100;
-    private double verticalVelocity = 100;
-    private double gravityAccel = 400;
-    private double jumpVelocity = 200;
+    // Public so level tools can tell where the hero can get to, see WalkabilityGraph
+    public static final double WIDTH = 10;
+    public static final double HEIGHT = 16;
+    public static final double HORIZONTAL_VELOCITY = 100;
+    public static final double VERTICAL_VELOCITY = 100;
+    public static final double GRAVITY_ACCEL = 400;
+    public static final double JUMP_VELOCITY = 200;
+    private double horizontalVelocity = HORIZONTAL_VELOCITY;
+    private double verticalVelocity = VERTICAL_VELOCITY;
+    private double gravityAccel = GRAVITY_ACCEL;
+    private double jumpVelocity = JUMP_VELOCITY;
     private boolean isTouchingDown = false;
     private boolean stepDown = false;
     private boolean climbingLadder = false;
     private boolean onLadder = false;
+    private Controls controls;
 
     public Hero(AABB box, GameSprite gameSprite, boolean centerPosition, World world) {
         super(box, gameSprite, centerPosition, world);
         setAccelerationY(-gravityAccel);
+        controls = world.getPlayerControls();
+        world.setPlayer(this);
     }
 
     @Override
-    protected boolean onCollisionWithStaticEntity(StaticEntity otherStaticEntity, float delta) {
-        updateTouchingDown(otherStaticEntity.box);
+    protected boolean onCollisionWithStaticEntity(AABB staticBox, float delta) {
+        updateTouchingDown(staticBox);
         return true;
     }
 
@@ -52,8 +61,8 @@ public class Hero extends DynamicEntity {
     }
 
     @Override
-    protected boolean onCollisionWithOneWayPlatform(OneWayPlatform oneWayPlatform, float delta) {
-        if (velocityY <= 0 && box.bottomSideY() >= oneWayPlatform.getBox().topSideY()) {
+    protected boolean onCollisionWithOneWayPlatform(AABB platformBox, float delta) {
+        if (getVelocityY() <= 0 && box.bottomSideY() >= platformBox.topSideY()) {
             isTouchingDown = !stepDown;
             return isTouchingDown;
         } else {
@@ -62,11 +71,11 @@ public class Hero extends DynamicEntity {
     }
 
     @Override
-    protected boolean onCollisionWithLadder(Ladder ladder, float delta) {
+    protected boolean onCollisionWithLadder(AABB ladderBox, float delta) {
         boolean ret;
         if (climbingLadder)
             ret = false;
-        else if ((velocityY <= 0 && box.bottomSideY() >= ladder.getBox().topSideY()) && !onLadder) { // Evaluating !onLadder works because we always move horizontally first, so we will only collide from above with the top section of the ladder
+        else if ((getVelocityY() <= 0 && box.bottomSideY() >= ladderBox.topSideY()) && !onLadder) { // Evaluating !onLadder works because we always move horizontally first, so we will only collide from above with the top section of the ladder
             isTouchingDown = true;
             ret = true;
         } else
@@ -76,9 +85,9 @@ public class Hero extends DynamicEntity {
     }
 
     private boolean updateTouchingDown(AABB otherBox) {
-        if (velocityY <= 0 && box.bottomSideY() >= otherBox.topSideY()) {
+        if (getVelocityY() <= 0 && box.bottomSideY() >= otherBox.topSideY()) {
             isTouchingDown = true;
-        } else if (velocityY > 0) {
+        } else if (getVelocityY() > 0) {
             isTouchingDown = false;
         }
         return isTouchingDown;
@@ -89,17 +98,21 @@ public class Hero extends DynamicEntity {
         return entity.onCollisionWithHero(this, delta);
     }
 
+    public void setControls(Controls controls) {
+        this.controls = controls;
+    }
+
     private void handleInput() {
         setVelocityX(0);
-        if (Gdx.input.isKeyPressed(Input.Keys.LEFT)) {
+        if (controls.isLeftPressed()) {
             setVelocityX(-horizontalVelocity);
             gameSprite.setFacingRight(false);
         }
-        if (Gdx.input.isKeyPressed(Input.Keys.RIGHT)) {
+        if (controls.isRightPressed()) {
             setVelocityX(horizontalVelocity);
             gameSprite.setFacingRight(true);
         }
-        if (Gdx.input.isKeyJustPressed(Input.Keys.Z) && (isTouchingDown || climbingLadder)) {
+        if (controls.isJumpJustPressed() && (isTouchingDown || climbingLadder)) {
             gameSprite.setState(GameSprite.State.JUMPING);
             setVelocityY(jumpVelocity);
             climbingLadder = false;
@@ -108,12 +121,12 @@ public class Hero extends DynamicEntity {
         if (climbingLadder)
             setVelocityY(0);
 
-        if (Gdx.input.isKeyPressed(Input.Keys.UP) && onLadder) {
+        if (controls.isUpPressed() && onLadder) {
             setVelocityY(verticalVelocity);
             climbingLadder = true;
             gameSprite.setState(GameSprite.State.CLIMBING);
         }
-        if (Gdx.input.isKeyPressed(Input.Keys.DOWN)) {
+        if (controls.isDownPressed()) {
             if (onLadder) {
                 setVelocityY(-verticalVelocity);
                 climbingLadder = true;
@@ -123,6 +136,11 @@ public class Hero extends DynamicEntity {
         }
     }
 
+    @Override
+    public boolean canBeIntegratedInBatch() {
+        return false; // Gravity depends on the input and on climbing, see updateBeforeMoving
+    }
+
     @Override
     protected void updateBeforeMoving(float delta) {
         handleInput();
@@ -141,14 +159,14 @@ public class Hero extends DynamicEntity {
             if (!onLadder) {
                 climbingLadder = false;
             } else if (climbingLadder) {
-                if (Math.abs(velocityX) == 0 && velocityY == 0)
+                if (Math.abs(getVelocityX()) == 0 && getVelocityY() == 0)
                     gameSprite.setState(GameSprite.State.STANDING);
                 else
                     gameSprite.setState(GameSprite.State.CLIMBING);
             }
         }
         if (isTouchingDown) {
-            if (velocityX != 0) {
+            if (getVelocityX() != 0) {
                 gameSprite.setState(GameSprite.State.RUNNING);
             } else {
                 gameSprite.setState(GameSprite.State.STANDING);
@@ -18,17 +18,17 @@
 package com.sfernandezledesma.entities;
 
 
-import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.graphics.StaticGraphic;
 import com.sfernandezledesma.physics.AABB;
 import com.sfernandezledesma.world.World;
 
 public class OneWayPlatform extends StaticEntity {
-    public OneWayPlatform(AABB box, GameSprite gameSprite, boolean centerPosition, World world) {
-        super(box, gameSprite, centerPosition, world);
+    public OneWayPlatform(AABB box, StaticGraphic graphic, boolean centerPosition, World world) {
+        super(box, graphic, centerPosition, world);
     }
 
     @Override
     protected boolean resolveCollisionOf(Entity entity, float delta) {
-        return entity.onCollisionWithOneWayPlatform(this, delta);
+        return entity.onCollisionWithOneWayPlatform(box, delta);
     }
 }
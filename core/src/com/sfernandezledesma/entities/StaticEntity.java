@@ -19,25 +19,33 @@ package com.sfernandezledesma.entities;
 
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.sfernandezledesma.graphics.GameSprite;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.sfernandezledesma.graphics.StaticGraphic;
 import com.sfernandezledesma.physics.AABB;
 import com.sfernandezledesma.world.World;
 
 public class StaticEntity extends Entity {
+    // Shared with every other static entity that looks the same
+    private final StaticGraphic graphic;
 
-    public StaticEntity(AABB box, GameSprite gameSprite, boolean centerPosition, World world) {
-        super(box, gameSprite, centerPosition, world);
-        this.gameSprite.setPosition((float) getX(), (float) getY());
+    public StaticEntity(AABB box, StaticGraphic graphic, boolean centerPosition, World world) {
+        super(box, graphic.getScreenOffsetX(), graphic.getScreenOffsetY(), centerPosition, world);
+        this.graphic = graphic;
         world.addStaticEntity(this);
     }
 
     @Override
     protected boolean resolveCollisionOf(Entity entity, float delta) {
-        return entity.onCollisionWithStaticEntity(this, delta);
+        return entity.onCollisionWithStaticEntity(box, delta);
     }
 
     @Override
     public void render(SpriteBatch batch)  {
-        gameSprite.draw(batch);
+        graphic.draw(batch, (float) getX(), (float) getY());
+    }
+
+    // Used instead of render when the terrain is baked, see TerrainCache
+    public void addTo(SpriteCache cache) {
+        graphic.addTo(cache, (float) getX(), (float) getY());
     }
 }
@@ -0,0 +1,32 @@
+/*
+ * Assets.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.graphics;
+
+
+// Files loaded through the AssetManager and names of the regions inside the atlases.
+// The atlases are generated from the source sprite sheets by AtlasPacker, in the desktop project.
+public class Assets {
+    public static final String GAME_ATLAS = "atlas/game.atlas";
+    // Read by the game's LevelLoader, generated from the text levels by LevelConverter in the desktop project
+    public static final String FIRST_LEVEL = "levels/playground.lvl";
+    public static final String GROUND = "ground";
+    public static final String ONE_WAY = "one_way";
+    public static final String LADDER = "ladder";
+    // Indexed, one region per GameAnimatedSprite.Frame
+    public static final String HERO = "hero";
+}
@@ -0,0 +1,58 @@
+/*
+ * FrameTable.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.graphics;
+
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+// The frames of every animation of a kind of sprite, by GameSprite.State. It is built once and shared by all the
+// sprites of that kind, which only keep which frame they are showing. Animations loop, and a state without frames
+// of its own shows the frames of STANDING.
+public class FrameTable {
+    private final float frameDuration;
+    private final TextureRegion[][] frames = new TextureRegion[GameSprite.State.values().length][];
+
+    public FrameTable(float frameDuration) {
+        this.frameDuration = frameDuration;
+    }
+
+    public FrameTable set(GameSprite.State state, TextureRegion... stateFrames) {
+        frames[state.ordinal()] = stateFrames;
+        return this;
+    }
+
+    public int getFrameIndex(GameSprite.State state, float stateTime) {
+        TextureRegion[] stateFrames = framesOf(state);
+        if (stateFrames.length == 1)
+            return 0;
+        return (int) (stateTime / frameDuration) % stateFrames.length;
+    }
+
+    public TextureRegion getFrame(GameSprite.State state, int index) {
+        return framesOf(state)[index];
+    }
+
+    private TextureRegion[] framesOf(GameSprite.State state) {
+        TextureRegion[] stateFrames = frames[state.ordinal()];
+        return stateFrames != null ? stateFrames : frames[GameSprite.State.STANDING.ordinal()];
+    }
+
+    public float getFrameDuration() {
+        return frameDuration;
+    }
+}
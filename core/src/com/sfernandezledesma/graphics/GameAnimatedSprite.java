@@ -18,68 +18,68 @@
 package com.sfernandezledesma.graphics;
 
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.Animation;
-import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.utils.Array;
 
+// Its vertices are only touched when the state, the frame or the facing shown change. The animation is advanced by
+// the simulation in update, and draw does nothing else than showing the frame it is told to.
 public class GameAnimatedSprite extends GameSprite {
     protected enum Frame {FRAME_STANDING, FRAME_RUNNING_1, FRAME_RUNNING_2, FRAME_CLIMBING, FRAME_ATTACKING, FRAME_DEAD}
-    private Animation<TextureRegion> runningAnimation;
-    private Animation<TextureRegion> climbingAnimation;
-    private float stateTimer = 0;
+    private static final float FRAME_DURATION = 0.1f;
+    private FrameTable frameTable;
+    // Written by the simulation
+    private State animatedState;
+    private float stateTime = 0;
+    private int frame = 0;
+    // What the vertices show right now, only written when drawing
+    private State shownState;
+    private int shownFrame;
+    private boolean shownFacingRight;
 
-    public GameAnimatedSprite(Texture texture, int srcX, int srcY, int srcWidth, int srcHeight, float screenOffsetX, float screenOffsetY) {
-        super(texture, srcX, srcY, srcWidth, srcHeight, screenOffsetX, screenOffsetY);
+    public GameAnimatedSprite(FrameTable frameTable, float screenOffsetX, float screenOffsetY) {
+        super(frameTable.getFrame(State.STANDING, 0), screenOffsetX, screenOffsetY);
+        this.frameTable = frameTable;
         setBounds(0, 0, 16, 16);
-        TextureRegion textureRegion = new TextureRegion(getTexture());
-        Array<TextureRegion> frames = new Array<TextureRegion>();
-        Frame frame = Frame.FRAME_RUNNING_1;
-        textureRegion.setRegion(srcX + 16 * frame.ordinal(), srcY, 16, 16);
-        frames.add(new TextureRegion(textureRegion));
-        frame = Frame.FRAME_RUNNING_2;
-        textureRegion.setRegion(srcX + 16 * frame.ordinal(), srcY, 16, 16);
-        frames.add(new TextureRegion(textureRegion));
-        runningAnimation = new Animation<TextureRegion>(0.1f, frames);
-
-        frames = new Array<TextureRegion>();
-        frame = Frame.FRAME_CLIMBING;
-        textureRegion.setRegion(srcX + 16 * frame.ordinal(), srcY, 16, 16);
-        frames.add(new TextureRegion(textureRegion));
-        frame = Frame.FRAME_RUNNING_2;
-        textureRegion.setRegion(srcX + 16 * frame.ordinal(), srcY, 16, 16);
-        frames.add(new TextureRegion(textureRegion));
-        climbingAnimation = new Animation<TextureRegion>(0.1f, frames);
+        animatedState = state;
+        showFrame(state, 0, facingRight);
+    }
 
-        setFrame(Frame.FRAME_STANDING);
+    // Frames laid out as in Frame, one region each, like the hero in the game atlas
+    public static FrameTable characterFrames(Array<? extends TextureRegion> regions) {
+        return new FrameTable(FRAME_DURATION)
+                .set(State.STANDING, regions.get(Frame.FRAME_STANDING.ordinal()))
+                .set(State.RUNNING, regions.get(Frame.FRAME_RUNNING_1.ordinal()), regions.get(Frame.FRAME_RUNNING_2.ordinal()))
+                .set(State.JUMPING, regions.get(Frame.FRAME_RUNNING_1.ordinal()))
+                .set(State.CLIMBING, regions.get(Frame.FRAME_CLIMBING.ordinal()), regions.get(Frame.FRAME_RUNNING_2.ordinal()));
     }
 
     @Override
-    public void draw(Batch batch) {
-        stateTimer += Gdx.graphics.getDeltaTime();
-        TextureRegion region;
-        switch (state) {
-            default:
-            case STANDING:
-                setFrame(Frame.FRAME_STANDING);
-                break;
-            case RUNNING:
-                setRegion(runningAnimation.getKeyFrame(stateTimer, true));
-                break;
-            case JUMPING:
-                setFrame(Frame.FRAME_RUNNING_1);
-                break;
-            case CLIMBING:
-                setRegion(climbingAnimation.getKeyFrame(stateTimer, true));
-                break;
+    public void update(float delta) {
+        if (state != animatedState) { // Setting the state more than once per update doesn't restart the animation
+            animatedState = state;
+            stateTime = 0;
+        } else {
+            stateTime += delta;
         }
-        setFacingRight(facingRight);
-        super.draw(batch);
+        frame = frameTable.getFrameIndex(state, stateTime);
+    }
+
+    @Override
+    public int getFrame() {
+        return state == animatedState ? frame : 0;
+    }
+
+    @Override
+    protected void show(State state, int frame, boolean facingRight) {
+        if (state != shownState || frame != shownFrame || facingRight != shownFacingRight)
+            showFrame(state, frame, facingRight);
     }
 
-    private void setFrame(Frame frame) {
-        setRegion(srcX + 16 * frame.ordinal(), srcY, 16, 16);
+    private void showFrame(State state, int frame, boolean facingRight) {
+        setRegion(frameTable.getFrame(state, frame));
+        setFlip(!facingRight, false);
+        shownState = state;
+        shownFrame = frame;
+        shownFacingRight = facingRight;
     }
 }
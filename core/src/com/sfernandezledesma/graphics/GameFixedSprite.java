@@ -18,10 +18,10 @@
 package com.sfernandezledesma.graphics;
 
 
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 public class GameFixedSprite extends GameSprite {
-    public GameFixedSprite(Texture texture, int srcX, int srcY, int srcWidth, int srcHeight, float screenOffsetX, float screenOffsetY) {
-        super(texture, srcX, srcY, srcWidth, srcHeight, screenOffsetX, screenOffsetY);
+    public GameFixedSprite(TextureRegion region, float screenOffsetX, float screenOffsetY) {
+        super(region, screenOffsetX, screenOffsetY);
     }
 }
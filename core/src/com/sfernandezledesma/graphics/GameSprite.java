@@ -18,9 +18,13 @@
 package com.sfernandezledesma.graphics;
 
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 
+// The simulation sets state and facing, and advances animations in update, without touching the vertices. Those are
+// only written when drawing, so the simulation can run in another thread (see world.ThreadedSimulation).
 public abstract class GameSprite extends Sprite {
     public enum State {STANDING, RUNNING, JUMPING, CLIMBING, ATTACKING, DEAD}
 
@@ -43,15 +47,69 @@ public abstract class GameSprite extends Sprite {
         this.srcHeight = srcHeight;
     }
 
+    public GameSprite(TextureRegion region, float screenOffsetX, float screenOffsetY) {
+        super(region);
+        this.screenOffsetX = screenOffsetX;
+        this.screenOffsetY = screenOffsetY;
+        this.srcX = region.getRegionX();
+        this.srcY = region.getRegionY();
+        this.srcWidth = region.getRegionWidth();
+        this.srcHeight = region.getRegionHeight();
+    }
+
+    // For sprites without a texture
+    protected GameSprite(float width, float height, float screenOffsetX, float screenOffsetY) {
+        super();
+        setSize(width, height);
+        this.screenOffsetX = screenOffsetX;
+        this.screenOffsetY = screenOffsetY;
+        this.srcWidth = (int) width;
+        this.srcHeight = (int) height;
+    }
+
+    // Called once per simulation update by the entity, sprites that animate override it
+    public void update(float delta) {
+    }
+
     public void setState(State newState) {
         state = newState;
     }
 
+    public State getState() {
+        return state;
+    }
+
     public void setFacingRight(boolean facingRight) {
-        setFlip(!facingRight, false);
         this.facingRight = facingRight;
     }
 
+    public boolean isFacingRight() {
+        return facingRight;
+    }
+
+    // Frame of the current state's animation that should be shown
+    public int getFrame() {
+        return 0;
+    }
+
+    // Draws what the simulation set last, with the entity at (x, y)
+    public void draw(Batch batch, float x, float y) {
+        draw(batch, x, y, state, getFrame(), facingRight);
+    }
+
+    // Draws the given frame with the entity at (x, y), the values may come from a snapshot of the simulation
+    public void draw(Batch batch, float x, float y, State state, int frame, boolean facingRight) {
+        setPosition(x, y);
+        show(state, frame, facingRight);
+        draw(batch);
+    }
+
+    // Updates the vertices to show the given frame, only if it isn't being shown already
+    protected void show(State state, int frame, boolean facingRight) {
+        if (isFlipX() == facingRight)
+            setFlip(!facingRight, false);
+    }
+
     /*public GameSprite(GameSprite other) {
         this(other.getTexture(), other.getRegionX(), other.getRegionY(), other.getRegionWidth(), other.getRegionHeight(), other.screenOffsetX, other.screenOffsetY);
     }*/
@@ -0,0 +1,64 @@
+/*
+ * StaticGraphic.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.graphics;
+
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+// What an entity that never moves nor animates looks like. It has no per entity state, so a single instance is shared
+// by every entity of the same kind, which draws it at its own position. A null region draws nothing (headless worlds).
+public class StaticGraphic {
+    private final TextureRegion region;
+    private final float width;
+    private final float height;
+    private final float screenOffsetX;
+    private final float screenOffsetY;
+
+    public StaticGraphic(TextureRegion region, float width, float height, float screenOffsetX, float screenOffsetY) {
+        this.region = region;
+        this.width = width;
+        this.height = height;
+        this.screenOffsetX = screenOffsetX;
+        this.screenOffsetY = screenOffsetY;
+    }
+
+    // (x, y) is the position of the entity, like in GameSprite.setPosition
+    public void draw(Batch batch, float x, float y) {
+        if (region != null)
+            batch.draw(region, x - screenOffsetX, y - screenOffsetY, width, height);
+    }
+
+    public void addTo(SpriteCache cache, float x, float y) {
+        if (region != null)
+            cache.add(region, x - screenOffsetX, y - screenOffsetY, width, height);
+    }
+
+    public TextureRegion getRegion() {
+        return region;
+    }
+
+    public float getScreenOffsetX() {
+        return screenOffsetX;
+    }
+
+    public float getScreenOffsetY() {
+        return screenOffsetY;
+    }
+}
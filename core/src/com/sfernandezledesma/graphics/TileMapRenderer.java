@@ -0,0 +1,51 @@
+/*
+ * TileMapRenderer.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.graphics;
+
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
+
+// Draws a TileMap, every tile of the same type shares one region
+public class TileMapRenderer {
+    private TextureRegion[] regions = new TextureRegion[Byte.MAX_VALUE + 1];
+
+    public void setTileRegion(byte tile, TextureRegion region) {
+        regions[tile] = region;
+    }
+
+    public TextureRegion getTileRegion(byte tile) {
+        return regions[tile];
+    }
+
+    // Only the cells overlapping view are drawn
+    public void render(Batch batch, TileMap map, AABB view) {
+        int size = TileMap.TILE_SIZE;
+        int lastRow = map.lastRow(view);
+        int lastColumn = map.lastColumn(view);
+        for (int row = map.firstRow(view); row <= lastRow; row++) {
+            for (int column = map.firstColumn(view); column <= lastColumn; column++) {
+                TextureRegion region = regions[map.getTile(column, row)];
+                if (region != null)
+                    batch.draw(region, column * size, row * size, size, size);
+            }
+        }
+    }
+}
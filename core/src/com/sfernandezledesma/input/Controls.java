@@ -0,0 +1,35 @@
+/*
+ * Controls.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.input;
+
+
+// What the hero reads every update, so it doesn't need to poll the keyboard directly
+public interface Controls {
+    boolean isLeftPressed();
+
+    boolean isRightPressed();
+
+    boolean isUpPressed();
+
+    boolean isDownPressed();
+
+    boolean isJumpJustPressed();
+
+    // Called by the world at the end of every update
+    void endTick();
+}
@@ -0,0 +1,73 @@
+/*
+ * KeyboardControls.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.input;
+
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+
+// Keys are read once per frame by poll and the world reads the copies, so it can run zero or several updates per frame,
+// even in another thread (see world.ThreadedSimulation). A jump key press is kept until the end of the next update
+// instead of only during the frame it happened.
+public class KeyboardControls implements Controls {
+    private boolean leftPressed = false;
+    private boolean rightPressed = false;
+    private boolean upPressed = false;
+    private boolean downPressed = false;
+    private boolean jumpPressed = false;
+
+    // Should be called once per frame, while the world is not being updated
+    public void poll() {
+        leftPressed = Gdx.input.isKeyPressed(Input.Keys.LEFT);
+        rightPressed = Gdx.input.isKeyPressed(Input.Keys.RIGHT);
+        upPressed = Gdx.input.isKeyPressed(Input.Keys.UP);
+        downPressed = Gdx.input.isKeyPressed(Input.Keys.DOWN);
+        if (Gdx.input.isKeyJustPressed(Input.Keys.Z))
+            jumpPressed = true;
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return leftPressed;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return rightPressed;
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return upPressed;
+    }
+
+    @Override
+    public boolean isDownPressed() {
+        return downPressed;
+    }
+
+    @Override
+    public boolean isJumpJustPressed() {
+        return jumpPressed;
+    }
+
+    @Override
+    public void endTick() {
+        jumpPressed = false;
+    }
+}
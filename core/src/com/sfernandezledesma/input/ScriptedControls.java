@@ -0,0 +1,79 @@
+/*
+ * ScriptedControls.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.input;
+
+
+// Plays back a fixed sequence of inputs, one entry per simulation tick. Each entry is a combination of the
+// LEFT, RIGHT, UP, DOWN and JUMP flags, and the script starts over when it reaches the end.
+public class ScriptedControls implements Controls {
+    public static final int LEFT = 1;
+    public static final int RIGHT = 1 << 1;
+    public static final int UP = 1 << 2;
+    public static final int DOWN = 1 << 3;
+    public static final int JUMP = 1 << 4;
+    private int[] script;
+    // Position in the script, wraps around at its end so it never overflows on long runs
+    private int tick = 0;
+    private boolean started = false;
+
+    public ScriptedControls(int... script) {
+        this.script = script.length == 0 ? new int[]{0} : script;
+    }
+
+    // Moves on to the inputs of the next tick
+    @Override
+    public void endTick() {
+        tick = (tick + 1) % script.length;
+        started = true;
+    }
+
+    private int current() {
+        return script[tick];
+    }
+
+    private int previous() {
+        if (!started)
+            return 0;
+        return script[tick == 0 ? script.length - 1 : tick - 1];
+    }
+
+    @Override
+    public boolean isLeftPressed() {
+        return (current() & LEFT) != 0;
+    }
+
+    @Override
+    public boolean isRightPressed() {
+        return (current() & RIGHT) != 0;
+    }
+
+    @Override
+    public boolean isUpPressed() {
+        return (current() & UP) != 0;
+    }
+
+    @Override
+    public boolean isDownPressed() {
+        return (current() & DOWN) != 0;
+    }
+
+    @Override
+    public boolean isJumpJustPressed() {
+        return (current() & JUMP) != 0 && (previous() & JUMP) == 0;
+    }
+}
@@ -18,6 +18,8 @@
 package com.sfernandezledesma.physics;
 
 
+// The sides and the overlap tests go through the getters, so a box can keep its values elsewhere (see
+// DynamicBodyStore.Body)
 public class AABB {
     private double x;
     private double y;
@@ -38,9 +40,16 @@ public class AABB {
         this.height = height;
     }
 
+    public void set(double x, double y, double width, double height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
     public void syncPositionWith(AABB other) {
-        x = other.x;
-        y = other.y;
+        x = other.getX();
+        y = other.getY();
     }
 
     public void setPosition(double x, double y) {
@@ -81,27 +90,27 @@ public class AABB {
     }
 
     public double leftSideX() {
-        return x;
+        return getX();
     }
 
     public double rightSideX() {
-        return x + width;
+        return getX() + getWidth();
     }
 
     public double topSideY() {
-        return y + height;
+        return getY() + getHeight();
     }
 
     public double bottomSideY() {
-        return y;
+        return getY();
     }
 
     public double centerX() {
-        return x + width / 2;
+        return getX() + getWidth() / 2;
     }
 
     public double centerY() {
-        return y + height / 2;
+        return getY() + getHeight() / 2;
     }
 
     public boolean overlapsWith(AABB otherAABB) {
@@ -18,41 +18,106 @@
 package com.sfernandezledesma.physics;
 
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
 import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.utils.Log;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
 
-public class CollisionQuadtree {
+public class CollisionQuadtree implements Pool.Poolable {
     public static final int MAX_ENTITIES = 8;
+    // A subtree is collapsed back into its parent when it holds this many entities or less. It's lower than
+    // MAX_ENTITIES so a node going back and forth around the limit doesn't split and merge every frame.
+    public static final int MERGE_ENTITIES = MAX_ENTITIES / 2;
     public static final int MAX_LEVELS = 10;
+    public static final double STRICT = 1.0;
     private int level;
-    private Set<Entity> entities;
+    private Array<Entity> entities;
     private AABB bounds;
+    // In a loose tree each child is enlarged by the looseness factor and entities are routed by their center,
+    // so boxes straddling a split line still sink down. A looseness of 1 gives the classic strict quadtree.
+    private double looseness;
+    private AABB looseBounds;
     private CollisionQuadtree parent = null;
+    private CollisionQuadtree root;
     private CollisionQuadtree topLeftTree = null;
     private CollisionQuadtree topRightTree = null;
     private CollisionQuadtree bottomLeftTree = null;
     private CollisionQuadtree bottomRightTree = null;
+    // Only used by the root, nodes freed by merges are recycled by later splits
+    private Pool<CollisionQuadtree> nodePool;
+    // Only used by the root. An unbounded root keeps the entities outside of its bounds instead of destroying them,
+    // for worlds that are bigger than the region the tree covers.
+    private boolean unbounded = false;
 
     public CollisionQuadtree(int level, AABB bounds, CollisionQuadtree parent) {
+        this(level, bounds, parent, parent == null ? STRICT : parent.looseness);
+    }
+
+    public CollisionQuadtree(int level, AABB bounds, CollisionQuadtree parent, double looseness) {
+        if (looseness < STRICT)
+            throw new IllegalArgumentException("Looseness must be at least 1, was " + looseness);
+        this.looseness = looseness;
+        init(level, bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight(), parent);
+        if (parent == null) {
+            nodePool = new Pool<CollisionQuadtree>() {
+                @Override
+                protected CollisionQuadtree newObject() {
+                    return new CollisionQuadtree();
+                }
+            };
+        }
+    }
+
+    // Used by the node pool
+    private CollisionQuadtree() {
+    }
+
+    private CollisionQuadtree init(int level, double x, double y, double width, double height, CollisionQuadtree parent) {
         this.level = level;
-        entities = new HashSet<Entity>(MAX_ENTITIES + 1);
-        this.bounds = new AABB(bounds);
+        if (entities == null)
+            entities = new Array<Entity>(false, MAX_ENTITIES + 1);
+        if (bounds == null)
+            bounds = new AABB(x, y, width, height);
+        else
+            bounds.set(x, y, width, height);
         this.parent = parent;
+        this.root = parent == null ? this : parent.root;
+        if (parent != null)
+            looseness = parent.looseness;
+        if (parent == null || looseness == STRICT) { // The root never grows, outside of it is handled by add
+            looseBounds = bounds;
+        } else {
+            double marginX = width * (looseness - 1) / 2.0;
+            double marginY = height * (looseness - 1) / 2.0;
+            if (looseBounds == null || looseBounds == bounds)
+                looseBounds = new AABB(0, 0, 0, 0);
+            looseBounds.set(x - marginX, y - marginY, width + 2 * marginX, height + 2 * marginY);
+        }
+        return this;
     }
 
+    @Override
+    public void reset() {
+        entities.clear();
+        parent = null;
+        root = null;
+        topLeftTree = null;
+        topRightTree = null;
+        bottomLeftTree = null;
+        bottomRightTree = null;
+    }
+
+    // Removes every entity and gives the children back to the pool
     public void clear() {
         getEntities().clear();
-        if (getTopLeftTree() != null) {
-            getTopLeftTree().clear();
-            getTopRightTree().clear();
-            getBottomLeftTree().clear();
-            getBottomRightTree().clear();
+        if (hasChildren()) {
+            topLeftTree.clear();
+            topRightTree.clear();
+            bottomLeftTree.clear();
+            bottomRightTree.clear();
+            freeChildren();
         }
     }
 
@@ -61,24 +126,77 @@ public class CollisionQuadtree {
         double halfHeight = getBounds().getHeight() / 2.0;
         double centerX = getBounds().leftSideX() + halfWidth;
         double centerY = getBounds().bottomSideY() + halfHeight;
-        topLeftTree = new CollisionQuadtree(getLevel() + 1, new AABB(getBounds().leftSideX(), centerY, halfWidth, halfHeight), this);
-        topRightTree = new CollisionQuadtree(getLevel() + 1, new AABB(centerX, centerY, halfWidth, halfHeight), this);
-        bottomLeftTree = new CollisionQuadtree(getLevel() + 1, new AABB(getBounds().leftSideX(), getBounds().bottomSideY(), halfWidth, halfHeight), this);
-        bottomRightTree = new CollisionQuadtree(getLevel() + 1, new AABB(centerX, getBounds().bottomSideY(), halfWidth, halfHeight), this);
+        Pool<CollisionQuadtree> pool = root.nodePool;
+        topLeftTree = pool.obtain().init(getLevel() + 1, getBounds().leftSideX(), centerY, halfWidth, halfHeight, this);
+        topRightTree = pool.obtain().init(getLevel() + 1, centerX, centerY, halfWidth, halfHeight, this);
+        bottomLeftTree = pool.obtain().init(getLevel() + 1, getBounds().leftSideX(), getBounds().bottomSideY(), halfWidth, halfHeight, this);
+        bottomRightTree = pool.obtain().init(getLevel() + 1, centerX, getBounds().bottomSideY(), halfWidth, halfHeight, this);
+    }
+
+    // Collapses the children into this node if together they became small enough, and keeps going up
+    private void tryMerging() {
+        if (!hasChildren() || topLeftTree.hasChildren() || topRightTree.hasChildren() || bottomLeftTree.hasChildren() || bottomRightTree.hasChildren())
+            return;
+        int total = entities.size + topLeftTree.entities.size + topRightTree.entities.size + bottomLeftTree.entities.size + bottomRightTree.entities.size;
+        if (total > MERGE_ENTITIES)
+            return;
+        adoptEntitiesOf(topLeftTree);
+        adoptEntitiesOf(topRightTree);
+        adoptEntitiesOf(bottomLeftTree);
+        adoptEntitiesOf(bottomRightTree);
+        freeChildren();
+        if (parent != null)
+            parent.tryMerging();
+    }
+
+    private void adoptEntitiesOf(CollisionQuadtree child) {
+        for (int i = 0; i < child.entities.size; i++) {
+            Entity e = child.entities.get(i);
+            entities.add(e);
+            e.setQuadtree(this);
+        }
     }
 
+    private void freeChildren() {
+        Pool<CollisionQuadtree> pool = root.nodePool;
+        pool.free(topLeftTree);
+        pool.free(topRightTree);
+        pool.free(bottomLeftTree);
+        pool.free(bottomRightTree);
+        topLeftTree = null;
+        topRightTree = null;
+        bottomLeftTree = null;
+        bottomRightTree = null;
+    }
+
+    // Called on the node holding e after its box changed. Most moves are small and the entity stays in the same
+    // node, in that case nothing is touched. Otherwise we only climb until a node can hold it and sink from there.
     public boolean update(Entity e) {
-        if(!remove(e)) {
-            Gdx.app.log("QUADTREE ERROR", "Tried to remove something that isn't there");
+        AABB box = e.getBox();
+        if ((fits(box) || isKeepingOutsider(box)) && childThatFits(box) == null)
+            return true;
+        if(!entities.removeValue(e, true)) {
+            Log.log("QUADTREE ERROR", "Tried to remove something that isn't there");
             return false;
         }
-        return add(e);
+        CollisionQuadtree node = this;
+        while (node.parent != null && !node.fits(box))
+            node = node.parent;
+        boolean added = node.add(e);
+        if (parent != null) // Only now, merging before adding could give this node back to the pool
+            parent.tryMerging();
+        return added;
     }
 
     public boolean add(Entity e) {
-        if (!e.getBox().insideOf(bounds)) {
+        if (!fits(e.getBox())) {
             if (parent == null) {
-                Gdx.app.log("QUADTREE ERROR", "Entity cannot be added to the quadtree, it is out of the world!");
+                if (unbounded) { // Stays in the root, every query looks at it
+                    entities.add(e);
+                    e.setQuadtree(this);
+                    return true;
+                }
+                Log.log("QUADTREE ERROR", "Entity cannot be added to the quadtree, it is out of the world!");
                 e.setToBeDestroyed(true);
                 return false;
             } else {
@@ -89,17 +207,15 @@ public class CollisionQuadtree {
                 // We have to add it in this node, and now we must check if we reached our limit
                 entities.add(e); // Even if we were "full", we had to add the entity
                 e.setQuadtree(this);
-                if (entities.size() > CollisionQuadtree.MAX_ENTITIES && level < CollisionQuadtree.MAX_LEVELS && !hasChildren()) {
+                if (entities.size > CollisionQuadtree.MAX_ENTITIES && level < CollisionQuadtree.MAX_LEVELS && !hasChildren()) {
                     /*String ids = "";
                     for (Entity element : entities)
                         ids += " " + element.getID();
-                    Gdx.app.log("QUADTREE INFO", "Split quadtree because it had " + entities.size() + " elements. Their IDs are:" + ids);*/
+                    Gdx.app.log("QUADTREE INFO", "Split quadtree because it had " + entities.size + " elements. Their IDs are:" + ids);*/
                     split();
-                    Iterator<Entity> it = entities.iterator();
-                    while (it.hasNext()) {
-                        Entity entityToAddToChild = it.next();
-                        if (tryAddingToChildren(entityToAddToChild)) {
-                            it.remove();
+                    for (int i = entities.size - 1; i >= 0; i--) {
+                        if (tryAddingToChildren(entities.get(i))) {
+                            entities.removeIndex(i);
                         }
                     }
                 }
@@ -110,47 +226,112 @@ public class CollisionQuadtree {
 
     // For now only removes the entity if it's present in the node, maybe it's enough
     public boolean remove(Entity e) {
-        return entities.remove(e);
+        if (!entities.removeValue(e, true))
+            return false;
+        if (parent != null)
+            parent.tryMerging();
+        return true;
+    }
+
+    // Whether box belongs to this node or to one of its descendants
+    private boolean fits(AABB box) {
+        if (looseBounds == bounds)
+            return box.insideOf(bounds);
+        double centerX = box.centerX();
+        double centerY = box.centerY();
+        return box.insideOf(looseBounds) && centerX >= bounds.leftSideX() && centerX < bounds.rightSideX()
+                && centerY >= bounds.bottomSideY() && centerY < bounds.topSideY();
+    }
+
+    private boolean isKeepingOutsider(AABB box) {
+        return parent == null && unbounded && !fits(box);
     }
 
     private boolean tryAddingToChildren(Entity e) {
+        CollisionQuadtree child = childThatFits(e.getBox());
+        return child != null && child.add(e);
+    }
+
+    private CollisionQuadtree childThatFits(AABB box) {
         if (!hasChildren()) {
-            return false;
+            return null;
+        }
+        if (looseness != STRICT) {
+            CollisionQuadtree child = childContaining(box.centerX(), box.centerY());
+            return child.fits(box) ? child : null;
         }
-        AABB box = e.getBox();
         if (box.insideOf(topLeftTree.getBounds())) {
-            return topLeftTree.add(e);
+            return topLeftTree;
         } else if (box.insideOf(topRightTree.getBounds())) {
-            return topRightTree.add(e);
+            return topRightTree;
         } else if (box.insideOf(bottomLeftTree.getBounds())) {
-            return bottomLeftTree.add(e);
+            return bottomLeftTree;
         } else if (box.insideOf(bottomRightTree.getBounds())) {
-            return bottomRightTree.add(e);
+            return bottomRightTree;
         } else
-            return false;
+            return null;
+    }
+
+    private CollisionQuadtree childContaining(double x, double y) {
+        boolean left = x < topRightTree.getBounds().leftSideX();
+        boolean bottom = y < topLeftTree.getBounds().bottomSideY();
+        if (bottom)
+            return left ? bottomLeftTree : bottomRightTree;
+        else
+            return left ? topLeftTree : topRightTree;
     }
 
+    // Convenience wrapper, allocates a new list on every call. Per-frame code should use collectPossibleCollidingEntities.
+    // The list is sorted by ID.
     public ArrayList<Entity> getPossibleCollidingEntities(AABB box) {
-        CollisionQuadtree root = this;
-        while (root.getParent() != null)
-            root = root.getParent();
-        return root.collectPossibleCollidingEntities(box, new ArrayList<Entity>());
+        Array<Entity> result = new Array<Entity>();
+        collectPossibleCollidingEntities(box, result);
+        Entity.sortByID(result);
+        ArrayList<Entity> list = new ArrayList<Entity>(result.size);
+        for (int i = 0; i < result.size; i++)
+            list.add(result.get(i));
+        return list;
+    }
+
+    // Appends to result every entity that may overlap box, without allocating (besides growing result if needed).
+    // Can be called on any node, the search always starts from the root.
+    public void collectPossibleCollidingEntities(AABB box, Array<Entity> result) {
+        root.collectFromSubtree(box, result);
     }
 
-    // First call should be on the root node
-    private ArrayList<Entity> collectPossibleCollidingEntities(AABB box, ArrayList<Entity> list) {
-        list.addAll(entities);
+    private void collectFromSubtree(AABB box, Array<Entity> result) {
+        result.addAll(entities);
         if (hasChildren()) {
-            if (box.overlapsWith(topLeftTree.getBounds()))
-                topLeftTree.collectPossibleCollidingEntities(box, list);
-            if (box.overlapsWith(topRightTree.getBounds()))
-                topRightTree.collectPossibleCollidingEntities(box, list);
-            if (box.overlapsWith(bottomLeftTree.getBounds()))
-                bottomLeftTree.collectPossibleCollidingEntities(box, list);
-            if (box.overlapsWith(bottomRightTree.getBounds()))
-                bottomRightTree.collectPossibleCollidingEntities(box, list);
+            if (box.overlapsWith(topLeftTree.looseBounds))
+                topLeftTree.collectFromSubtree(box, result);
+            if (box.overlapsWith(topRightTree.looseBounds))
+                topRightTree.collectFromSubtree(box, result);
+            if (box.overlapsWith(bottomLeftTree.looseBounds))
+                bottomLeftTree.collectFromSubtree(box, result);
+            if (box.overlapsWith(bottomRightTree.looseBounds))
+                bottomRightTree.collectFromSubtree(box, result);
         }
-        return list;
+    }
+
+    // Appends to result every node whose bounds overlap box, starting from this one. Used by the debug overlay.
+    public void collectNodes(AABB box, Array<CollisionQuadtree> result) {
+        if (!box.overlapsWith(bounds))
+            return;
+        result.add(this);
+        if (hasChildren()) {
+            topLeftTree.collectNodes(box, result);
+            topRightTree.collectNodes(box, result);
+            bottomLeftTree.collectNodes(box, result);
+            bottomRightTree.collectNodes(box, result);
+        }
+    }
+
+    public boolean isUnbounded() {
+        return root.unbounded;
+    }
+
+    public void setUnbounded(boolean unbounded) {
+        root.unbounded = unbounded;
     }
 
     public boolean hasChildren() {
@@ -161,7 +342,7 @@ public class CollisionQuadtree {
         return level;
     }
 
-    public Set<Entity> getEntities() {
+    public Array<Entity> getEntities() {
         return entities;
     }
 
@@ -169,10 +350,23 @@ public class CollisionQuadtree {
         return bounds;
     }
 
+    // The region entities stored in this subtree can occupy. Equal to getBounds() in a strict tree.
+    public AABB getLooseBounds() {
+        return looseBounds;
+    }
+
+    public double getLooseness() {
+        return looseness;
+    }
+
     public CollisionQuadtree getParent() {
         return parent;
     }
 
+    public CollisionQuadtree getRoot() {
+        return root;
+    }
+
     public CollisionQuadtree getTopLeftTree() {
         return topLeftTree;
     }
@@ -189,20 +383,10 @@ public class CollisionQuadtree {
         return bottomRightTree;
     }
 
-    public void debugRender(ShapeRenderer shapeRenderer) {
-        shapeRenderer.rect((float)bounds.getX(), (float)bounds.getY(), (float)bounds.getWidth(), (float)bounds.getHeight());
-        if (hasChildren()) {
-            topLeftTree.debugRender(shapeRenderer);
-            topRightTree.debugRender(shapeRenderer);
-            bottomLeftTree.debugRender(shapeRenderer);
-            bottomRightTree.debugRender(shapeRenderer);
-        }
-    }
-
     public int getTotalEntities() {
         if (!hasChildren())
-            return entities.size();
+            return entities.size;
         else
-            return entities.size() + topLeftTree.getTotalEntities() + topRightTree.getTotalEntities() + bottomLeftTree.getTotalEntities() + bottomRightTree.getTotalEntities();
+            return entities.size + topLeftTree.getTotalEntities() + topRightTree.getTotalEntities() + bottomLeftTree.getTotalEntities() + bottomRightTree.getTotalEntities();
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * StaticCollisionIndex.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.physics;
+
+
+import com.badlogic.gdx.utils.Array;
+import com.sfernandezledesma.entities.Entity;
+
+// Uniform grid for entities that never move. It is built in one go after the level is loaded and never updated,
+// cells are packed in a single array (cellStart[c] to cellStart[c + 1] are the entities overlapping cell c).
+public class StaticCollisionIndex {
+    public static final double DEFAULT_CELL_SIZE = 64;
+    private AABB bounds;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellStart;
+    private Entity[] cellEntities = new Entity[0];
+    private int size = 0;
+
+    public StaticCollisionIndex(AABB bounds, double cellSize) {
+        this.bounds = new AABB(bounds);
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+        rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+        cellStart = new int[columns * rows + 1];
+    }
+
+    // Replaces the contents of the index. Entities outside of the bounds are not indexed and are marked to be destroyed.
+    public void build(Array<? extends Entity> entities) {
+        int[] count = new int[columns * rows];
+        int references = 0;
+        size = 0;
+        for (int i = 0; i < entities.size; i++) {
+            Entity e = entities.get(i);
+            AABB box = e.getBox();
+            if (e.isToBeDestroyed())
+                continue;
+            if (!box.insideOf(bounds)) {
+                e.setToBeDestroyed(true);
+                continue;
+            }
+            for (int row = firstRow(box); row <= lastRow(box); row++) {
+                for (int column = firstColumn(box); column <= lastColumn(box); column++) {
+                    count[row * columns + column]++;
+                    references++;
+                }
+            }
+            size++;
+        }
+        cellStart[0] = 0;
+        for (int cell = 0; cell < count.length; cell++) {
+            cellStart[cell + 1] = cellStart[cell] + count[cell];
+            count[cell] = cellStart[cell]; // From now on count is the next free slot of each cell
+        }
+        cellEntities = new Entity[references];
+        for (int i = 0; i < entities.size; i++) {
+            Entity e = entities.get(i);
+            if (e.isToBeDestroyed())
+                continue;
+            AABB box = e.getBox();
+            for (int row = firstRow(box); row <= lastRow(box); row++) {
+                for (int column = firstColumn(box); column <= lastColumn(box); column++) {
+                    cellEntities[count[row * columns + column]++] = e;
+                }
+            }
+        }
+    }
+
+    // Appends to result every indexed entity that may overlap box, each at most once and without allocating.
+    // An entity spanning several cells is only reported from the cell holding the bottom left corner of its
+    // intersection with box, so no bookkeeping is needed to skip duplicates and concurrent queries are safe.
+    public void collectPossibleCollidingEntities(AABB box, Array<Entity> result) {
+        if (size == 0 || !box.overlapsWith(bounds))
+            return;
+        int firstColumn = firstColumn(box);
+        int lastColumn = lastColumn(box);
+        int firstRow = firstRow(box);
+        int lastRow = lastRow(box);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    Entity e = cellEntities[i];
+                    AABB otherBox = e.getBox();
+                    if (column == Math.max(firstColumn, firstColumn(otherBox)) && row == Math.max(firstRow, firstRow(otherBox)))
+                        result.add(e);
+                }
+            }
+        }
+    }
+
+    private int firstColumn(AABB box) {
+        return clamp((int) Math.floor((box.leftSideX() - bounds.leftSideX()) / cellSize), columns);
+    }
+
+    private int lastColumn(AABB box) {
+        return clamp((int) Math.ceil((box.rightSideX() - bounds.leftSideX()) / cellSize) - 1, columns);
+    }
+
+    private int firstRow(AABB box) {
+        return clamp((int) Math.floor((box.bottomSideY() - bounds.bottomSideY()) / cellSize), rows);
+    }
+
+    private int lastRow(AABB box) {
+        return clamp((int) Math.ceil((box.topSideY() - bounds.bottomSideY()) / cellSize) - 1, rows);
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+
+    public AABB getBounds() {
+        return bounds;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * TileCollisionMap.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.physics;
+
+
+import java.nio.ByteBuffer;
+
+// Dense grid of terrain tiles. Each cell is just a byte with the tile type, so a level can have millions of them.
+public class TileCollisionMap extends TileMap {
+    private final byte[] tiles;
+
+    public TileCollisionMap(int columns, int rows) {
+        super(columns, rows);
+        tiles = new byte[columns * rows];
+    }
+
+    @Override
+    public byte getTile(int column, int row) {
+        if (!contains(column, row))
+            return EMPTY;
+        return tiles[row * getColumns() + column];
+    }
+
+    @Override
+    public void setTile(int column, int row, byte tile) {
+        tiles[row * getColumns() + column] = tile;
+    }
+
+    // Replaces every tile with the whole content of source, row by row starting from the bottom one
+    public void setTiles(ByteBuffer source) {
+        ByteBuffer view = source.duplicate();
+        view.rewind();
+        if (view.remaining() != tiles.length)
+            throw new IllegalArgumentException("Expected " + tiles.length + " tiles, got " + view.remaining());
+        view.get(tiles);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * TileMap.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.physics;
+
+
+// A grid of terrain tiles, each one a byte with its type. Collision queries only look at the cells a box touches.
+// Where the tiles are kept is up to each kind of map: TileCollisionMap has all of them in one array, streamed worlds
+// only the chunks that are loaded (see ChunkedTileMap). Tiles outside of the map read as EMPTY.
+public abstract class TileMap {
+    public static final int TILE_SIZE = 16;
+    public static final byte EMPTY = 0;
+    public static final byte SOLID = 1;
+    public static final byte ONE_WAY = 2;
+    public static final byte LADDER = 3;
+    // Collision box of each tile type inside its cell, indexed by type. Ladders are thinner than the cell.
+    private static final int[] BOX_OFFSET_X = {0, 0, 0, 4};
+    private static final int[] BOX_WIDTH = {TILE_SIZE, TILE_SIZE, TILE_SIZE, 8};
+    private final int columns;
+    private final int rows;
+
+    protected TileMap(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public abstract byte getTile(int column, int row);
+
+    public abstract void setTile(int column, int row, byte tile);
+
+    public boolean contains(int column, int row) {
+        return column >= 0 && column < columns && row >= 0 && row < rows;
+    }
+
+    // Whether a tile placed with its bottom left corner at (x, y) would sit exactly on a cell
+    public boolean isAligned(double x, double y) {
+        return x % TILE_SIZE == 0 && y % TILE_SIZE == 0 && contains(columnOf(x), rowOf(y));
+    }
+
+    public int columnOf(double x) {
+        return (int) Math.floor(x / TILE_SIZE);
+    }
+
+    public int rowOf(double y) {
+        return (int) Math.floor(y / TILE_SIZE);
+    }
+
+    // The cells a box overlaps go from firstColumn to lastColumn, both included. Touching a cell doesn't count.
+    public int firstColumn(AABB box) {
+        return Math.max(0, columnOf(box.leftSideX()));
+    }
+
+    public int lastColumn(AABB box) {
+        return Math.min(columns - 1, (int) Math.ceil(box.rightSideX() / TILE_SIZE) - 1);
+    }
+
+    public int firstRow(AABB box) {
+        return Math.max(0, rowOf(box.bottomSideY()));
+    }
+
+    public int lastRow(AABB box) {
+        return Math.min(rows - 1, (int) Math.ceil(box.topSideY() / TILE_SIZE) - 1);
+    }
+
+    // Writes in out the collision box of the tile at the given cell
+    public AABB getTileBox(int column, int row, AABB out) {
+        byte tile = getTile(column, row);
+        out.set(column * TILE_SIZE + BOX_OFFSET_X[tile], row * TILE_SIZE, BOX_WIDTH[tile], TILE_SIZE);
+        return out;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
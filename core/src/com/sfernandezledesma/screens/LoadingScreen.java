@@ -19,8 +19,9 @@ package com.sfernandezledesma.screens;
 
 
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.sfernandezledesma.Platformer;
+import com.sfernandezledesma.graphics.Assets;
 
 public class LoadingScreen extends GameScreen {
     private AssetManager assetManager;
@@ -28,7 +29,7 @@ public class LoadingScreen extends GameScreen {
     public LoadingScreen(Platformer game) {
         super(game);
         assetManager = game.getAssetManager();
-        assetManager.load("simples_pimples.png", Texture.class);
+        assetManager.load(Assets.GAME_ATLAS, TextureAtlas.class);
     }
 
     @Override
@@ -18,86 +18,99 @@
 package com.sfernandezledesma.screens;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.FPSLogger;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.badlogic.gdx.utils.async.AsyncResult;
 import com.sfernandezledesma.Platformer;
-import com.sfernandezledesma.entities.DynamicEntity;
 import com.sfernandezledesma.entities.EntityFactory;
 import com.sfernandezledesma.entities.Hero;
-import com.sfernandezledesma.entities.Ladder;
-import com.sfernandezledesma.entities.OneWayPlatform;
-import com.sfernandezledesma.entities.StaticEntity;
-import com.sfernandezledesma.graphics.GameFixedSprite;
-import com.sfernandezledesma.world.World;
-import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.graphics.Assets;
+import com.sfernandezledesma.input.KeyboardControls;
 import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.utils.Log;
+import com.sfernandezledesma.world.DebugOverlay;
+import com.sfernandezledesma.world.FixedTimestep;
+import com.sfernandezledesma.world.Level;
+import com.sfernandezledesma.world.LevelGenerator;
+import com.sfernandezledesma.world.RenderSnapshot;
+import com.sfernandezledesma.world.ThreadedSimulation;
+import com.sfernandezledesma.world.World;
 
 
 public class PlayingScreen extends GameScreen {
     private FPSLogger fpsLogger = new FPSLogger();
-    private ShapeRenderer shapeRenderer = new ShapeRenderer();
-
-    private Texture texture;
-    private GameSprite wallSprite;
+    // Toggled with F3
+    private DebugOverlay debugOverlay = new DebugOverlay();
 
     private World world;
+    private KeyboardControls controls = new KeyboardControls();
+    private FixedTimestep timestep = new FixedTimestep(Platformer.getTimeStep(), Platformer.getMaxSubsteps());
+    // Null when the world is updated in the render thread
+    private ThreadedSimulation simulation = null;
     private boolean paused = true;
-
-    private double vx = 0;
-    private double vy = 0;
+    // What the camera sees, in world coordinates
+    private AABB view = new AABB(0, 0, 0, 0);
+    // Always busy making the level that N swaps to
+    private LevelGenerator generator;
+    private AsyncResult<Level> nextLevel;
+    private long nextSeed = TimeUtils.millis();
 
     public PlayingScreen(Platformer game) {
         super(game);
-        world = new World(512, 512, game.getAssetManager());
-        texture = game.getAssetManager().get("simples_pimples.png", Texture.class);
-        wallSprite = new GameFixedSprite(texture, 16, 96, 16, 16, 0, 0);
-        this.vx = -10;
-        this.vy = vx;
-
-        testPlayground();
+        load(game.getLevelLoader().load(Gdx.files.internal(Assets.FIRST_LEVEL)));
+        generator = new LevelGenerator(Platformer.getGeneratedColumns(), Platformer.getGeneratedRows(),
+                Platformer.getTimeStep(), Platformer.getGeneratorThreads());
+        nextLevel = generator.generate(nextSeed++);
 
         paused = false;
     }
 
-    private void testPlayground() {
-        EntityFactory entityFactory = new EntityFactory(world);
-        entityFactory.createEntityInWorld(EntityFactory.EntityName.HERO, 128, 350);
-        for (int i = 0; i < 512; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 0);
-        }
-        for (int i = 0; i < 192; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 48);
+    private void load(Level level) {
+        if ((long) level.getColumns() * level.getRows() > Platformer.getMaxLoadedTiles()) {
+            world = new World(level, Platformer.getChunkRadius(), game.getAssetManager());
+            world.setPlayerControls(controls);
+            // The hero is only created once its chunk loads, so the camera starts where it will be
+            int start = level.findSpawn(EntityFactory.EntityName.HERO);
+            if (start >= 0)
+                moveCamera(level.getSpawnX(start), level.getSpawnY(start));
+            updateView();
+            world.stream(view);
+            world.getStreamer().finishLoading(); // The first chunks are needed right away
+        } else {
+            world = new World(level.getWidth(), level.getHeight(), game.getAssetManager());
+            world.setPlayerControls(controls);
+            level.populate(world);
+            world.bakeTerrain();
+            followPlayer();
         }
-        for (int i = 272; i < 512; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 48);
-        }
-        for (int i = 128; i < 240; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 96);
-        }
-        for (int i = 64; i < 112; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.LADDER, 112, i);
-        }
-        for (int i = 0; i < 196; i += 16) {
-            entityFactory.createEntityInWorld(EntityFactory.EntityName.ONEWAY, i, 128);
-        }
-        DynamicEntity movingWall1 = new DynamicEntity(new AABB(272, 272, wallSprite.getWidth(), wallSprite.getHeight()), wallSprite, true, world);
-        movingWall1.setVelocityX(vx);
-        movingWall1.setVelocityY(vy);
-        DynamicEntity movingWall2 = new DynamicEntity(new AABB(288, 272, wallSprite.getWidth(), wallSprite.getHeight()), wallSprite, true, world);
-        movingWall2.setVelocityX(vx);
-        movingWall2.setVelocityY(vy);
+        if (Platformer.isSimulationThreaded())
+            simulation = new ThreadedSimulation(world);
     }
 
-    private void testMovingWalls() {
-        for (int i = 8; i < 32; i++) {
-            for (int j = 24; j > 5; j--) {
-                DynamicEntity movingWall = new DynamicEntity(new AABB(16 * i, 16 * j, 16, 16), wallSprite, true, world);
-                movingWall.setVelocityY(vy);
-                movingWall.setVelocityX(vx);
-            }
+    // The next level was generated while this one was played, only the world has to be made. Until then N does nothing.
+    private void swapLevel() {
+        if (!nextLevel.isDone()) {
+            Log.log("LEVEL GENERATOR", "The next level isn't ready yet");
+            return;
         }
+        Level level;
+        try {
+            level = nextLevel.get();
+        } catch (GdxRuntimeException e) {
+            // Keeps playing this level, N will try the one generated next
+            Log.log("LEVEL GENERATOR", "Couldn't generate the next level: " + e.getMessage());
+            nextLevel = generator.generate(nextSeed++);
+            return;
+        }
+        if (simulation != null)
+            simulation.dispose();
+        simulation = null;
+        world.dispose();
+        load(level);
+        nextLevel = generator.generate(nextSeed++);
     }
 
     @Override
@@ -109,22 +122,62 @@ public class PlayingScreen extends GameScreen {
     public void render(float delta) {
         if (paused)
             return;
-        delta = Math.min(delta, Platformer.getMaxDelta());
-        world.update(delta);
+        // The worker may still be updating the world since last frame, it has to be done before reading input
+        RenderSnapshot snapshot = simulation == null ? null : simulation.finishUpdates();
+        if (Gdx.input.isKeyJustPressed(Input.Keys.N)) {
+            swapLevel();
+            snapshot = simulation == null ? null : simulation.getSnapshot(); // Nothing moved in the new world yet
+        }
+        controls.poll();
+        int steps = timestep.advance(delta);
+        followPlayer();
+        updateView();
+        world.stream(view); // Between updates, the worker is idle now
+        if (simulation != null) {
+            simulation.startUpdates(steps, timestep.getStep(), timestep.getAlpha(), view);
+        } else {
+            for (int i = 0; i < steps; i++)
+                world.update(timestep.getStep());
+        }
 
         Gdx.gl.glClearColor(0, 0, 0, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
         batch.setProjectionMatrix(camera.combined);
-        batch.begin();
-        world.render(batch);
-        batch.end();
+        if (simulation != null) // Drawn while the worker runs this frame's updates, so it is one frame behind
+            world.render(batch, snapshot, view);
+        else
+            world.render(batch, timestep.getAlpha(), view);
 
         //fpsLogger.log();
+        //Gdx.app.log("RENDER INFO", "Batch calls: " + batch.renderCalls + ", cached sprites: " + world.getTerrainCache().getRenderedSprites());
         //Gdx.app.log("QUADTREE INFO", "Total entities: " + world.getQuadtree().getTotalEntities());
-        shapeRenderer.setProjectionMatrix(camera.combined);
-        shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
-        world.getQuadtree().debugRender(shapeRenderer);
-        shapeRenderer.end();
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F3))
+            debugOverlay.toggle();
+        if (debugOverlay.isEnabled() && simulation != null) // The overlay reads the quadtree
+            simulation.finishUpdates();
+        debugOverlay.render(world, camera.combined, batch, view);
+    }
+
+    // The view, which is also what streamed levels load around, follows the hero. Only while the world isn't updating.
+    private void followPlayer() {
+        Hero player = world.getPlayer();
+        if (player != null)
+            moveCamera(player.getBox().centerX(), player.getBox().centerY());
+    }
+
+    // Centers the camera on (x, y) without showing what's outside of the world, unless the world is smaller
+    private void moveCamera(double x, double y) {
+        float halfWidth = camera.viewportWidth * camera.zoom / 2;
+        float halfHeight = camera.viewportHeight * camera.zoom / 2;
+        camera.position.x = (float) Math.max(halfWidth, Math.min(world.getWidth() - halfWidth, x));
+        camera.position.y = (float) Math.max(halfHeight, Math.min(world.getHeight() - halfHeight, y));
+        camera.update();
+    }
+
+    private void updateView() {
+        float viewWidth = camera.viewportWidth * camera.zoom;
+        float viewHeight = camera.viewportHeight * camera.zoom;
+        view.set(camera.position.x - viewWidth / 2, camera.position.y - viewHeight / 2, viewWidth, viewHeight);
     }
 
     @Override
@@ -144,6 +197,10 @@ public class PlayingScreen extends GameScreen {
 
     @Override
     public void dispose() {
-        texture.dispose();
+        generator.dispose();
+        if (simulation != null)
+            simulation.dispose();
+        world.dispose();
+        debugOverlay.dispose();
     }
 }
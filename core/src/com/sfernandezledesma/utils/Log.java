@@ -0,0 +1,31 @@
+/*
+ * Log.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.utils;
+
+
+import com.badlogic.gdx.Gdx;
+
+// Same as Gdx.app.log, but also works when the simulation runs without a libGDX application (tests, benchmarks...)
+public class Log {
+    public static void log(String tag, String message) {
+        if (Gdx.app != null)
+            Gdx.app.log(tag, message);
+        else
+            System.out.println("[" + tag + "] " + message);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * CaveGenerator.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.sfernandezledesma.physics.TileCollisionMap;
+
+import java.nio.ByteBuffer;
+
+// Caves made with a cellular automaton: tiles start solid at random, then a few times every tile becomes solid when
+// at least five of the nine tiles around it (itself included) are, counting the outside as solid. The border is
+// always solid. What comes out is usually many pockets that can't get to each other, see WalkabilityGraph.repair.
+// Each step works on bands of BAND_ROWS rows that only write their own rows, so bands can be done in parallel (see
+// LevelGenerator). Every band has its own random numbers, so the cave only depends on the seed.
+public class CaveGenerator {
+    public static final int FILL_PERCENT = 45;
+    public static final int ITERATIONS = 5;
+    public static final int BAND_ROWS = 32;
+
+    // The same seed always makes the same cave
+    public static TileCollisionMap generate(int columns, int rows, long seed) {
+        TileCollisionMap tileMap = new TileCollisionMap(columns, rows);
+        tileMap.setTiles(ByteBuffer.wrap(carve(columns, rows, seed)));
+        return tileMap;
+    }
+
+    // Tiles row by row starting from the bottom one, like in the level files. Does every band in this thread.
+    public static byte[] carve(int columns, int rows, long seed) {
+        byte[] tiles = new byte[columns * rows];
+        byte[] next = new byte[columns * rows];
+        for (int band = 0; band < getBandCount(rows); band++)
+            fill(tiles, columns, rows, band, seed);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int band = 0; band < getBandCount(rows); band++)
+                smooth(tiles, next, columns, rows, band);
+            byte[] swap = tiles;
+            tiles = next;
+            next = swap;
+        }
+        closeBorder(tiles, columns, rows);
+        return tiles;
+    }
+
+    public static int getBandCount(int rows) {
+        return (rows + BAND_ROWS - 1) / BAND_ROWS;
+    }
+
+    // The random start of a band
+    public static void fill(byte[] tiles, int columns, int rows, int band, long seed) {
+        RandomXS128 random = new RandomXS128(seed * 31 + band);
+        int last = Math.min(rows, (band + 1) * BAND_ROWS) * columns;
+        for (int i = band * BAND_ROWS * columns; i < last; i++)
+            tiles[i] = random.nextInt(100) < FILL_PERCENT ? TileCollisionMap.SOLID : TileCollisionMap.EMPTY;
+    }
+
+    // One iteration of the automaton for the rows of a band, reading every row of from
+    public static void smooth(byte[] from, byte[] to, int columns, int rows, int band) {
+        int lastRow = Math.min(rows, (band + 1) * BAND_ROWS);
+        for (int row = band * BAND_ROWS; row < lastRow; row++) {
+            for (int column = 0; column < columns; column++) {
+                boolean solid = solidAround(from, columns, rows, column, row) >= 5;
+                to[row * columns + column] = solid ? TileCollisionMap.SOLID : TileCollisionMap.EMPTY;
+            }
+        }
+    }
+
+    public static void closeBorder(byte[] tiles, int columns, int rows) {
+        for (int column = 0; column < columns; column++) {
+            tiles[column] = TileCollisionMap.SOLID;
+            tiles[(rows - 1) * columns + column] = TileCollisionMap.SOLID;
+        }
+        for (int row = 0; row < rows; row++) {
+            tiles[row * columns] = TileCollisionMap.SOLID;
+            tiles[row * columns + columns - 1] = TileCollisionMap.SOLID;
+        }
+    }
+
+    private static int solidAround(byte[] tiles, int columns, int rows, int column, int row) {
+        int count = 0;
+        for (int y = row - 1; y <= row + 1; y++) {
+            for (int x = column - 1; x <= column + 1; x++) {
+                if (x < 0 || y < 0 || x >= columns || y >= rows || tiles[y * columns + x] == TileCollisionMap.SOLID)
+                    count++;
+            }
+        }
+        return count;
+    }
+}
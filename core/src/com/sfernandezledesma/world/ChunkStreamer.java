@@ -0,0 +1,295 @@
+/*
+ * ChunkStreamer.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.entities.StaticEntity;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.utils.Log;
+
+// Keeps loaded only the chunks of a level around a focus (the hero, see PlayingScreen), so memory and time per frame
+// don't depend on the size of the level. Chunks within radius of the focus chunk are loaded in a background thread,
+// and unloaded once they are more than radius + 1 away. The level spawns of a chunk are looked up when it is loaded:
+// terrain is created every time, anything else only the first time.
+// Dynamic entities outside of the loaded chunks go dormant: they are taken out of the world, kept here by chunk and
+// put back as they were when their chunk is loaded again. Chunks whose tiles changed are kept aside when unloaded
+// instead of being read again from the level. Both are capped, past MAX_KEPT_CHUNKS or MAX_DORMANT the chunk
+// farthest from the focus is forgotten. Outside of the level there are no chunks, entities there just have to be
+// close enough to the focus.
+// Chunks are installed in the order they were requested, but which frame they arrive in depends on how long loading
+// takes. Runs that have to be reproducible call finishLoading after every update.
+public class ChunkStreamer implements Disposable {
+    public static final int CHUNK_TILES = 32;
+    public static final int MAX_KEPT_CHUNKS = 256;
+    public static final int MAX_DORMANT = 4096;
+    private final Level level;
+    private final World world;
+    private final int radius;
+    private final ChunkedTileMap tileMap;
+    private EntityFactory entityFactory = null;
+    private final int levelChunkColumns;
+    private final int levelChunkRows;
+    private int focusColumn;
+    private int focusRow;
+    private final Array<WorldChunk> loaded = new Array<WorldChunk>(false, 16);
+    private final AsyncExecutor executor = new AsyncExecutor(1);
+    private final Array<Loading> loading = new Array<Loading>(true, 16);
+    // The level spawns that aren't terrain and have already been created, by index
+    private final Bits spawned;
+    private final IntArray spawns = new IntArray();
+    private final LongMap<Array<DynamicEntity>> dormantByChunk = new LongMap<Array<DynamicEntity>>();
+    private int dormantCount = 0;
+    private final LongMap<WorldChunk> keptChunks = new LongMap<WorldChunk>();
+
+    private class Loading implements AsyncTask<WorldChunk> {
+        private final WorldChunk chunk;
+        private AsyncResult<WorldChunk> result;
+
+        Loading(WorldChunk chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public WorldChunk call() {
+            chunk.load(level);
+            return chunk;
+        }
+    }
+
+    public ChunkStreamer(Level level, World world, int radius) {
+        this.level = level;
+        this.world = world;
+        this.radius = radius;
+        // Wide enough for every chunk that can be loaded at the same time
+        tileMap = new ChunkedTileMap(level.getColumns(), level.getRows(), CHUNK_TILES, 2 * radius + 3);
+        levelChunkColumns = (level.getColumns() + CHUNK_TILES - 1) / CHUNK_TILES;
+        levelChunkRows = (level.getRows() + CHUNK_TILES - 1) / CHUNK_TILES;
+        level.indexSpawns(CHUNK_TILES);
+        spawned = new Bits(level.getSpawnCount());
+    }
+
+    // Called between world updates, never during one
+    public void update(AABB focus) {
+        focusColumn = tileMap.chunkOf(focus.centerX());
+        focusRow = tileMap.chunkOf(focus.centerY());
+        int kept = 0;
+        for (int i = 0; i < loaded.size; i++) {
+            WorldChunk chunk = loaded.get(i);
+            if (distanceToFocus(chunk.getChunkColumn(), chunk.getChunkRow()) > radius + 1) {
+                tileMap.removeChunk(chunk);
+                if (chunk.hasOwnState())
+                    keep(chunk);
+            } else
+                loaded.set(kept++, chunk);
+        }
+        loaded.truncate(kept);
+        while (loading.size > 0 && loading.first().result.isDone())
+            install(loading.removeIndex(0).chunk, true);
+        for (int row = focusRow - radius; row <= focusRow + radius; row++) {
+            for (int column = focusColumn - radius; column <= focusColumn + radius; column++) {
+                if (!isInsideLevel(column, row)) {
+                    wakeDormant(column, row);
+                } else if (tileMap.getChunk(column, row) == null && !isLoading(column, row)) {
+                    WorldChunk keptChunk = keptChunks.remove(key(column, row));
+                    if (keptChunk != null) {
+                        install(keptChunk, false);
+                        continue;
+                    }
+                    Loading task = new Loading(new WorldChunk(column, row, CHUNK_TILES));
+                    task.result = executor.submit(task);
+                    loading.add(task);
+                }
+            }
+        }
+        world.sleepDynamicEntities(this);
+    }
+
+    // Waits for the chunks being loaded and installs them
+    public void finishLoading() {
+        while (loading.size > 0) {
+            Loading task = loading.removeIndex(0);
+            task.result.get();
+            install(task.chunk, true);
+        }
+    }
+
+    // Chunks read from the level get its spawns, kept ones still have their static entities
+    private void install(WorldChunk chunk, boolean fromLevel) {
+        int column = chunk.getChunkColumn();
+        int row = chunk.getChunkRow();
+        if (distanceToFocus(column, row) > radius + 1)
+            return; // The focus went away meanwhile
+        tileMap.putChunk(chunk);
+        loaded.add(chunk);
+        if (fromLevel) {
+            spawns.clear();
+            level.collectSpawns(column, row, spawns);
+            for (int i = 0; i < spawns.size; i++) {
+                int spawn = spawns.get(i);
+                if (!EntityFactory.isTerrain(level.getSpawnType(spawn)) && spawned.getAndSet(spawn))
+                    continue;
+                if (entityFactory == null)
+                    entityFactory = new EntityFactory(world);
+                level.spawn(spawn, entityFactory);
+            }
+            chunk.clearTilesChanged();
+        }
+        chunk.buildStaticIndex();
+        wakeDormant(column, row);
+    }
+
+    private void keep(WorldChunk chunk) {
+        keptChunks.put(key(chunk.getChunkColumn(), chunk.getChunkRow()), chunk);
+        if (keptChunks.size > MAX_KEPT_CHUNKS) {
+            long farthest = farthestFromFocus(keptChunks.keys());
+            keptChunks.remove(farthest);
+            Log.log("STREAMER", "Too many changed chunks, the changes of chunk " + (int) (farthest >> 32) + ", "
+                    + (int) farthest + " are lost");
+        }
+    }
+
+    private void wakeDormant(int column, int row) {
+        Array<DynamicEntity> dormant = dormantByChunk.remove(key(column, row));
+        if (dormant != null) {
+            dormantCount -= dormant.size;
+            world.wakeDynamicEntities(dormant);
+        }
+    }
+
+    // Whether a dynamic entity can stay in the world, otherwise it's given to putToSleep
+    boolean isActive(DynamicEntity entity) {
+        AABB box = entity.getBox();
+        int column = tileMap.chunkOf(box.centerX());
+        int row = tileMap.chunkOf(box.centerY());
+        if (distanceToFocus(column, row) > radius + 1)
+            return false;
+        return !isInsideLevel(column, row) || tileMap.getChunk(column, row) != null;
+    }
+
+    void putToSleep(DynamicEntity entity) {
+        AABB box = entity.getBox();
+        long key = key(tileMap.chunkOf(box.centerX()), tileMap.chunkOf(box.centerY()));
+        Array<DynamicEntity> dormant = dormantByChunk.get(key);
+        if (dormant == null) {
+            dormant = new Array<DynamicEntity>();
+            dormantByChunk.put(key, dormant);
+        }
+        dormant.add(entity);
+        dormantCount++;
+        if (dormantCount > MAX_DORMANT) {
+            long farthest = farthestFromFocus(dormantByChunk.keys());
+            Array<DynamicEntity> forgotten = dormantByChunk.remove(farthest);
+            dormantCount -= forgotten.size;
+            Log.log("STREAMER", "Too many dormant entities, the " + forgotten.size + " of chunk "
+                    + (int) (farthest >> 32) + ", " + (int) farthest + " are removed");
+        }
+    }
+
+    // Static entities are created while installing their chunk, they belong to the chunk of their bottom left corner
+    void addStaticEntity(StaticEntity entity) {
+        AABB box = entity.getBox();
+        WorldChunk chunk = tileMap.getChunk(tileMap.chunkOf(box.leftSideX()), tileMap.chunkOf(box.bottomSideY()));
+        if (chunk == null) {
+            Log.log("STREAMER ERROR", "Static entity " + entity.getID() + " is not in a loaded chunk");
+            return;
+        }
+        chunk.addStaticEntity(entity);
+    }
+
+    // Static entities can stick out of their chunk to the right and up, so the chunks to the left and below are asked too
+    void collectPossibleCollidingStaticEntities(AABB box, Array<Entity> result) {
+        int lastColumn = tileMap.chunkOf(box.rightSideX());
+        int lastRow = tileMap.chunkOf(box.topSideY());
+        for (int row = tileMap.chunkOf(box.bottomSideY()) - 1; row <= lastRow; row++) {
+            for (int column = tileMap.chunkOf(box.leftSideX()) - 1; column <= lastColumn; column++) {
+                WorldChunk chunk = tileMap.getChunk(column, row);
+                if (chunk != null)
+                    chunk.collectPossibleCollidingStaticEntities(box, result);
+            }
+        }
+    }
+
+    // Called before each update, so chunk indexes are never rebuilt while islands are updated in parallel
+    void updateStaticIndexes() {
+        for (int i = 0; i < loaded.size; i++)
+            loaded.get(i).updateStaticIndex();
+    }
+
+    private boolean isLoading(int column, int row) {
+        for (int i = 0; i < loading.size; i++) {
+            WorldChunk chunk = loading.get(i).chunk;
+            if (chunk.getChunkColumn() == column && chunk.getChunkRow() == row)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isInsideLevel(int column, int row) {
+        return column >= 0 && column < levelChunkColumns && row >= 0 && row < levelChunkRows;
+    }
+
+    private int distanceToFocus(int column, int row) {
+        return Math.max(Math.abs(column - focusColumn), Math.abs(row - focusRow));
+    }
+
+    private long farthestFromFocus(LongMap.Keys keys) {
+        long farthest = keys.next();
+        while (keys.hasNext) {
+            long key = keys.next();
+            if (distanceToFocus((int) (key >> 32), (int) key) > distanceToFocus((int) (farthest >> 32), (int) farthest))
+                farthest = key;
+        }
+        return farthest;
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    @Override
+    public void dispose() {
+        executor.dispose();
+    }
+
+    public ChunkedTileMap getTileMap() {
+        return tileMap;
+    }
+
+    public int getLoadedChunks() {
+        return loaded.size;
+    }
+
+    public int getKeptChunks() {
+        return keptChunks.size;
+    }
+
+    public int getDormantChunks() {
+        return dormantByChunk.size;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * ChunkedTileMap.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.sfernandezledesma.physics.TileMap;
+
+// Tile map of a streamed level, see ChunkStreamer. Only the tiles of the loaded chunks exist, the rest read as EMPTY.
+// Loaded chunks are kept in a square window that wraps around, so finding the chunk of a tile is just an index.
+// The window has to be wider than the area the streamer keeps loaded.
+public class ChunkedTileMap extends TileMap {
+    private final int chunkSize;
+    private final int windowSize;
+    private final WorldChunk[] window;
+
+    // chunkSize is in tiles, windowSize in chunks
+    public ChunkedTileMap(int columns, int rows, int chunkSize, int windowSize) {
+        super(columns, rows);
+        this.chunkSize = chunkSize;
+        this.windowSize = windowSize;
+        window = new WorldChunk[windowSize * windowSize];
+    }
+
+    @Override
+    public byte getTile(int column, int row) {
+        if (!contains(column, row))
+            return EMPTY;
+        WorldChunk chunk = getChunk(column / chunkSize, row / chunkSize);
+        return chunk == null ? EMPTY : chunk.getTile(column % chunkSize, row % chunkSize);
+    }
+
+    @Override
+    public void setTile(int column, int row, byte tile) {
+        WorldChunk chunk = getChunk(column / chunkSize, row / chunkSize);
+        if (chunk == null)
+            throw new IllegalStateException("Tile " + column + ", " + row + " is not loaded");
+        chunk.setTile(column % chunkSize, row % chunkSize, tile);
+    }
+
+    // Null unless that chunk is loaded
+    public WorldChunk getChunk(int chunkColumn, int chunkRow) {
+        WorldChunk chunk = window[slot(chunkColumn, chunkRow)];
+        return chunk != null && chunk.getChunkColumn() == chunkColumn && chunk.getChunkRow() == chunkRow ? chunk : null;
+    }
+
+    void putChunk(WorldChunk chunk) {
+        int slot = slot(chunk.getChunkColumn(), chunk.getChunkRow());
+        if (window[slot] != null)
+            throw new IllegalStateException("Chunk " + chunk.getChunkColumn() + ", " + chunk.getChunkRow() + " doesn't fit in the window");
+        window[slot] = chunk;
+    }
+
+    void removeChunk(WorldChunk chunk) {
+        int slot = slot(chunk.getChunkColumn(), chunk.getChunkRow());
+        if (window[slot] == chunk)
+            window[slot] = null;
+    }
+
+    // Chunk column or row of a coordinate in pixels
+    public int chunkOf(double coordinate) {
+        return (int) Math.floor(coordinate / (chunkSize * TILE_SIZE));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    private int slot(int chunkColumn, int chunkRow) {
+        int column = chunkColumn % windowSize;
+        int row = chunkRow % windowSize;
+        if (column < 0)
+            column += windowSize;
+        if (row < 0)
+            row += windowSize;
+        return row * windowSize + column;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * DebugOverlay.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.CollisionQuadtree;
+
+// Draws the quadtree nodes and the entity boxes inside the view, and how many entities each node holds.
+// It is off by default and costs nothing until it is first enabled, and once created it doesn't allocate per frame.
+public class DebugOverlay implements Disposable {
+    private static final Color NODE_COLOR = Color.WHITE;
+    private static final Color STATIC_COLOR = Color.GRAY;
+    private static final Color DYNAMIC_COLOR = Color.GREEN;
+    private boolean enabled = false;
+    private ShapeRenderer shapeRenderer = null;
+    private BitmapFont font = null;
+    private final StringBuilder text = new StringBuilder(8);
+    private final Array<CollisionQuadtree> nodes = new Array<CollisionQuadtree>(false, 64);
+    private final Array<Entity> entities = new Array<Entity>(false, 64);
+
+    public void toggle() {
+        setEnabled(!enabled);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled && shapeRenderer == null) {
+            shapeRenderer = new ShapeRenderer();
+            font = new BitmapFont();
+            font.getData().setScale(0.5f);
+            font.setUseIntegerPositions(false);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Must not be called between begin and end of the batch
+    public void render(World world, Matrix4 projection, Batch batch, AABB view) {
+        if (!enabled)
+            return;
+        nodes.clear();
+        entities.clear();
+        world.getQuadtree().collectNodes(view, nodes);
+        world.collectPossibleCollidingEntities(view, entities);
+
+        shapeRenderer.setProjectionMatrix(projection);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
+        shapeRenderer.setColor(NODE_COLOR);
+        for (int i = 0; i < nodes.size; i++)
+            rect(nodes.get(i).getBounds());
+        for (int i = 0; i < entities.size; i++) {
+            Entity e = entities.get(i);
+            shapeRenderer.setColor(e instanceof DynamicEntity ? DYNAMIC_COLOR : STATIC_COLOR);
+            rect(e.getBox());
+        }
+        shapeRenderer.end();
+
+        batch.setProjectionMatrix(projection);
+        batch.begin();
+        for (int i = 0; i < nodes.size; i++) {
+            CollisionQuadtree node = nodes.get(i);
+            if (node.getEntities().size == 0)
+                continue;
+            text.setLength(0);
+            text.append(node.getEntities().size);
+            AABB bounds = node.getBounds();
+            font.draw(batch, text, (float) bounds.getX() + 2, (float) bounds.topSideY() - 2);
+        }
+        batch.end();
+    }
+
+    private void rect(AABB box) {
+        shapeRenderer.rect((float) box.getX(), (float) box.getY(), (float) box.getWidth(), (float) box.getHeight());
+    }
+
+    @Override
+    public void dispose() {
+        if (shapeRenderer != null) {
+            shapeRenderer.dispose();
+            font.dispose();
+        }
+    }
+}
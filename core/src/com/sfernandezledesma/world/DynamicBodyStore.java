@@ -0,0 +1,241 @@
+/*
+ * DynamicBodyStore.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.sfernandezledesma.physics.AABB;
+
+// Positions, sizes, velocities and accelerations of every dynamic entity packed in parallel arrays. An entity only
+// keeps its Body, which is also its box. Bodies are kept contiguous (removing one moves the last into its slot) so
+// integrate is a straight loop.
+// This is a layout experiment and it makes world updates slower today: only integration is batched, while collision
+// code still goes through the box one value at a time, and through a Body that is an overridden method and two more
+// loads each time, on calls that now see two kinds of box. It only pays off once the broad and narrow phases read
+// the arrays directly. See WorldUpdateBenchmark with bodyStore.
+public class DynamicBodyStore {
+    private double[] x;
+    private double[] y;
+    private double[] width;
+    private double[] height;
+    private double[] velocityX;
+    private double[] velocityY;
+    private double[] accelerationX;
+    private double[] accelerationY;
+    // Entities that integrate on their own (like the hero, that only has gravity when not climbing) are skipped
+    private boolean[] integratedInBatch;
+    private Body[] bodies;
+    private int size = 0;
+
+    // A handle to a slot of the store. The fields it inherits from AABB are unused, every value is in the store.
+    public static class Body extends AABB {
+        private final DynamicBodyStore store;
+        private int index;
+
+        private Body(DynamicBodyStore store) {
+            super(0, 0, 0, 0);
+            this.store = store;
+        }
+
+        @Override
+        public void set(double x, double y, double width, double height) {
+            store.x[index] = x;
+            store.y[index] = y;
+            store.width[index] = width;
+            store.height[index] = height;
+        }
+
+        @Override
+        public void syncPositionWith(AABB other) {
+            setPosition(other.getX(), other.getY());
+        }
+
+        @Override
+        public void setPosition(double x, double y) {
+            store.x[index] = x;
+            store.y[index] = y;
+        }
+
+        @Override
+        public void translateX(double dx) {
+            store.x[index] += dx;
+        }
+
+        @Override
+        public void translateY(double dy) {
+            store.y[index] += dy;
+        }
+
+        @Override
+        public void setX(double x) {
+            store.x[index] = x;
+        }
+
+        @Override
+        public void setY(double y) {
+            store.y[index] = y;
+        }
+
+        @Override
+        public double getX() {
+            return store.x[index];
+        }
+
+        @Override
+        public double getY() {
+            return store.y[index];
+        }
+
+        @Override
+        public double getWidth() {
+            return store.width[index];
+        }
+
+        @Override
+        public double getHeight() {
+            return store.height[index];
+        }
+
+        public boolean isIntegratedInBatch() {
+            return store.integratedInBatch[index];
+        }
+
+        public double getVelocityX() {
+            return store.velocityX[index];
+        }
+
+        public void setVelocityX(double vx) {
+            store.velocityX[index] = vx;
+        }
+
+        public double getVelocityY() {
+            return store.velocityY[index];
+        }
+
+        public void setVelocityY(double vy) {
+            store.velocityY[index] = vy;
+        }
+
+        public double getAccelerationX() {
+            return store.accelerationX[index];
+        }
+
+        public void setAccelerationX(double ax) {
+            store.accelerationX[index] = ax;
+        }
+
+        public double getAccelerationY() {
+            return store.accelerationY[index];
+        }
+
+        public void setAccelerationY(double ay) {
+            store.accelerationY[index] = ay;
+        }
+
+        public DynamicBodyStore getStore() {
+            return store;
+        }
+    }
+
+    public DynamicBodyStore(int initialCapacity) {
+        x = new double[initialCapacity];
+        y = new double[initialCapacity];
+        width = new double[initialCapacity];
+        height = new double[initialCapacity];
+        velocityX = new double[initialCapacity];
+        velocityY = new double[initialCapacity];
+        accelerationX = new double[initialCapacity];
+        accelerationY = new double[initialCapacity];
+        integratedInBatch = new boolean[initialCapacity];
+        bodies = new Body[initialCapacity];
+    }
+
+    // A new body where box is, its velocity and acceleration start at zero
+    public Body add(AABB box, boolean integrateInBatch) {
+        if (size == bodies.length)
+            grow(Math.max(8, size * 2));
+        Body body = new Body(this);
+        body.index = size;
+        bodies[size] = body;
+        body.set(box.getX(), box.getY(), box.getWidth(), box.getHeight());
+        velocityX[size] = 0;
+        velocityY[size] = 0;
+        accelerationX[size] = 0;
+        accelerationY[size] = 0;
+        integratedInBatch[size] = integrateInBatch;
+        size++;
+        return body;
+    }
+
+    // The body can't be used after this
+    public void remove(Body body) {
+        int index = body.index;
+        int last = --size;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            width[index] = width[last];
+            height[index] = height[last];
+            velocityX[index] = velocityX[last];
+            velocityY[index] = velocityY[last];
+            accelerationX[index] = accelerationX[last];
+            accelerationY[index] = accelerationY[last];
+            integratedInBatch[index] = integratedInBatch[last];
+            bodies[index] = bodies[last];
+            bodies[index].index = index;
+        }
+        bodies[last] = null;
+        body.index = -1;
+    }
+
+    // Same as DynamicEntity.updateBeforeMoving does for a single entity
+    public void integrate(float delta) {
+        for (int i = 0; i < size; i++) {
+            if (integratedInBatch[i]) {
+                velocityX[i] += accelerationX[i] * delta;
+                velocityY[i] += accelerationY[i] * delta;
+            }
+        }
+    }
+
+    private void grow(int capacity) {
+        x = copyOf(x, capacity);
+        y = copyOf(y, capacity);
+        width = copyOf(width, capacity);
+        height = copyOf(height, capacity);
+        velocityX = copyOf(velocityX, capacity);
+        velocityY = copyOf(velocityY, capacity);
+        accelerationX = copyOf(accelerationX, capacity);
+        accelerationY = copyOf(accelerationY, capacity);
+        boolean[] newIntegratedInBatch = new boolean[capacity];
+        System.arraycopy(integratedInBatch, 0, newIntegratedInBatch, 0, size);
+        integratedInBatch = newIntegratedInBatch;
+        Body[] newBodies = new Body[capacity];
+        System.arraycopy(bodies, 0, newBodies, 0, size);
+        bodies = newBodies;
+    }
+
+    private double[] copyOf(double[] array, int capacity) {
+        double[] copy = new double[capacity];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * FixedTimestep.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+// Turns variable frame times into a whole number of fixed simulation steps. The time left over is carried to the
+// next frame, and at most maxSubsteps steps are run per frame so a slow frame can't make the next one even slower.
+public class FixedTimestep {
+    private float step;
+    private int maxSubsteps;
+    private float accumulator = 0;
+
+    public FixedTimestep(float step, int maxSubsteps) {
+        this.step = step;
+        this.maxSubsteps = maxSubsteps;
+    }
+
+    // Adds the frame time and returns how many steps should be run now
+    public int advance(float frameDelta) {
+        accumulator += frameDelta;
+        int steps = (int) (accumulator / step);
+        accumulator -= steps * step;
+        if (steps > maxSubsteps) // We are too far behind, the extra time is dropped and the game slows down instead
+            steps = maxSubsteps;
+        return steps;
+    }
+
+    // How far the simulation is between the last step and the next one, from 0 to 1
+    public float getAlpha() {
+        return Math.min(1f, accumulator / step);
+    }
+
+    public float getStep() {
+        return step;
+    }
+
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
+}
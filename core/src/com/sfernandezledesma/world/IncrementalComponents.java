@@ -0,0 +1,504 @@
+/*
+ * IncrementalComponents.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+
+// Strongly connected components of a digraph that only gets edges added, kept up to date as they come.
+// Components are sets of a union-find and are kept in topological order: every edge between two components goes from
+// a lower label to a higher one. An edge that already does needs nothing else, which is what most of them do.
+// For one that goes backwards, a search forwards from its target and one backwards from its source take turns, each
+// going on from the lowest (highest, backwards) label it has found, until those cross (the two way search of Haeupler
+// et al). When one side runs out of components quickly the other one doesn't have to look any further. Only what they
+// went through is moved, and merged if the edge closed a cycle. Reachability is answered by the same search.
+// The order is a linked list with labels spread out, so components can be moved between two others without touching
+// the rest. When there is no room left between two labels every label is spread out again.
+// Each component keeps the edges of all its nodes in two linked lists, spliced when components merge. Edges that end
+// up inside a component, or going to the same component as another one of the list, are unlinked the next time a
+// search goes through them.
+public class IncrementalComponents {
+    private static final long SPACING = 1L << 24;
+    // Union-find, the root of each node is the node that represents its component
+    private final IntArray parent = new IntArray();
+    private final IntArray size = new IntArray();
+    private int componentCount = 0;
+    // The order of the components, only valid for roots. -1 ends the list both ways.
+    private final LongArray label = new LongArray();
+    private final IntArray previous = new IntArray();
+    private final IntArray next = new IntArray();
+    private int first = -1;
+    private int last = -1;
+    // Edges leaving and entering each component, from firstOut/firstIn of the root to lastOut/lastIn
+    private final IntArray firstOut = new IntArray();
+    private final IntArray lastOut = new IntArray();
+    private final IntArray nextOut = new IntArray();
+    private final IntArray outTarget = new IntArray();
+    private final IntArray firstIn = new IntArray();
+    private final IntArray lastIn = new IntArray();
+    private final IntArray nextIn = new IntArray();
+    private final IntArray inSource = new IntArray();
+    // Search state. Components are marked with the epoch of the last search that found them and that went on from
+    // them, each way, and of the last one that merged or moved them. scanStamp marks them with the last edge list that
+    // went to them.
+    private final IntArray foundForward = new IntArray();
+    private final IntArray foundBackward = new IntArray();
+    private final IntArray doneForward = new IntArray();
+    private final IntArray doneBackward = new IntArray();
+    private final IntArray memberStamp = new IntArray();
+    private final IntArray movedStamp = new IntArray();
+    private final IntArray scanStamp = new IntArray();
+    private int epoch = 0;
+    private int scan = 0;
+    private final IntArray forwardHeap = new IntArray();
+    private final IntArray backwardHeap = new IntArray();
+    // What each side went on from, in that order
+    private final IntArray forward = new IntArray();
+    private final IntArray backward = new IntArray();
+    private final IntArray members = new IntArray();
+    private final IntArray pending = new IntArray();
+    private final IntArray sequence = new IntArray();
+
+    public void clear() {
+        parent.clear();
+        size.clear();
+        componentCount = 0;
+        label.clear();
+        previous.clear();
+        next.clear();
+        first = last = -1;
+        firstOut.clear();
+        lastOut.clear();
+        nextOut.clear();
+        outTarget.clear();
+        firstIn.clear();
+        lastIn.clear();
+        nextIn.clear();
+        inSource.clear();
+        foundForward.clear();
+        foundBackward.clear();
+        doneForward.clear();
+        doneBackward.clear();
+        memberStamp.clear();
+        movedStamp.clear();
+        scanStamp.clear();
+        epoch = 0;
+        scan = 0;
+    }
+
+    // A new node in a component of its own, after every other one in the order
+    public int addNode() {
+        int node = parent.size;
+        parent.add(node);
+        size.add(1);
+        label.add(0);
+        previous.add(-1);
+        next.add(-1);
+        firstOut.add(-1);
+        lastOut.add(-1);
+        firstIn.add(-1);
+        lastIn.add(-1);
+        foundForward.add(0);
+        foundBackward.add(0);
+        doneForward.add(0);
+        doneBackward.add(0);
+        memberStamp.add(0);
+        movedStamp.add(0);
+        scanStamp.add(0);
+        componentCount++;
+        append(node);
+        return node;
+    }
+
+    // Starts over with nodeCount nodes, grouped as given. Components have to be numbered in reverse topological order,
+    // as Tarjan's algorithm finds them: edges between components go from higher numbers to lower ones. Nodes in no
+    // component (-1) are left on their own. Edges added afterwards that agree with that cost next to nothing.
+    public void reset(int nodeCount, int[] components, int count) {
+        clear();
+        for (int node = 0; node < nodeCount; node++)
+            addNode();
+        int[] roots = new int[count];
+        for (int i = 0; i < count; i++)
+            roots[i] = -1;
+        for (int node = 0; node < nodeCount; node++) {
+            int component = components[node];
+            if (component < 0)
+                continue;
+            if (roots[component] < 0) {
+                roots[component] = node;
+            } else {
+                parent.set(node, roots[component]);
+                size.set(roots[component], size.get(roots[component]) + 1);
+                componentCount--;
+            }
+        }
+        first = last = -1;
+        for (int component = count - 1; component >= 0; component--)
+            append(roots[component]);
+        for (int node = 0; node < nodeCount; node++) {
+            if (components[node] < 0)
+                append(node);
+        }
+    }
+
+    public int find(int node) {
+        int[] parents = parent.items;
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+
+    public void addEdge(int from, int to) {
+        int source = find(from);
+        int target = find(to);
+        if (source == target)
+            return;
+        link(source, from, to);
+        if (label.get(source) < label.get(target))
+            return;
+        // The edge goes backwards, so target has to end up after source, or both in one component
+        search(target, source, false);
+        int merged = mergeCycle();
+        reorder(merged);
+    }
+
+    // Whether there is a path from one node to the other
+    public boolean isReachable(int from, int to) {
+        int source = find(from);
+        int target = find(to);
+        if (source == target)
+            return true;
+        if (label.get(source) > label.get(target))
+            return false;
+        return search(source, target, true);
+    }
+
+    private void link(int source, int from, int to) {
+        int edge = outTarget.size;
+        outTarget.add(to);
+        nextOut.add(-1);
+        if (lastOut.get(source) < 0)
+            firstOut.set(source, edge);
+        else
+            nextOut.set(lastOut.get(source), edge);
+        lastOut.set(source, edge);
+        int target = find(to);
+        inSource.add(from);
+        nextIn.add(-1);
+        if (lastIn.get(target) < 0)
+            firstIn.set(target, edge);
+        else
+            nextIn.set(lastIn.get(target), edge);
+        lastIn.set(target, edge);
+    }
+
+    // The two way search from start forwards and from end backwards, returns whether they met, which means there is a
+    // path from start to end. Stops there if asked to, otherwise only once the lowest label left forwards is above the
+    // highest one left backwards: anything between start and end in the order that either side didn't go on from
+    // can't be on such a path.
+    private boolean search(int start, int end, boolean stopWhenMet) {
+        epoch++;
+        forward.clear();
+        backward.clear();
+        forwardHeap.clear();
+        backwardHeap.clear();
+        foundForward.set(start, epoch);
+        foundBackward.set(end, epoch);
+        push(forwardHeap, start, false);
+        push(backwardHeap, end, true);
+        boolean met = false;
+        while (!met || !stopWhenMet) {
+            boolean goForward = forwardHeap.size > 0 && backwardHeap.size > 0
+                    && label.get(forwardHeap.first()) <= label.get(backwardHeap.first());
+            if (goForward)
+                met |= expand(pop(forwardHeap, false), true);
+            boolean goBackward = forwardHeap.size > 0 && backwardHeap.size > 0
+                    && label.get(forwardHeap.first()) <= label.get(backwardHeap.first());
+            if (goBackward)
+                met |= expand(pop(backwardHeap, true), false);
+            if (!goForward && !goBackward)
+                break;
+        }
+        return met;
+    }
+
+    // Goes through the edges of component one way, pushing what it finds for the first time that way, and returns
+    // whether it found something the other way found
+    private boolean expand(int component, boolean forwards) {
+        (forwards ? doneForward : doneBackward).set(component, epoch);
+        (forwards ? forward : backward).add(component);
+        IntArray firstEdge = forwards ? firstOut : firstIn;
+        IntArray lastEdge = forwards ? lastOut : lastIn;
+        IntArray nextEdge = forwards ? nextOut : nextIn;
+        IntArray ends = forwards ? outTarget : inSource;
+        IntArray found = forwards ? foundForward : foundBackward;
+        IntArray foundOtherWay = forwards ? foundBackward : foundForward;
+        boolean met = false;
+        int before = -1;
+        scan++;
+        for (int edge = firstEdge.get(component); edge >= 0; edge = nextEdge.get(edge)) {
+            int other = find(ends.get(edge));
+            // Inside the component since a merge, or to a component another edge of the list already goes to.
+            // Components only merge, so it won't be needed again.
+            if (other == component || scanStamp.get(other) == scan) {
+                int following = nextEdge.get(edge);
+                if (before < 0)
+                    firstEdge.set(component, following);
+                else
+                    nextEdge.set(before, following);
+                if (following < 0)
+                    lastEdge.set(component, before);
+                continue;
+            }
+            before = edge;
+            scanStamp.set(other, scan);
+            if (foundOtherWay.get(other) == epoch)
+                met = true;
+            if (found.get(other) != epoch) {
+                found.set(other, epoch);
+                push(forwards ? forwardHeap : backwardHeap, other, !forwards);
+            }
+        }
+        return met;
+    }
+
+    // After the search for an edge from end to start: the components on a path from start to end become one, with
+    // start and end. Those are the ones the forward search went on from that can get to one found backwards going only
+    // through such components, and the other way around. Returns the merged component, or -1 if there is no cycle.
+    private int mergeCycle() {
+        members.clear();
+        closeWithin(forward, doneForward, foundBackward, false);
+        closeWithin(backward, doneBackward, foundForward, true);
+        if (members.size == 0)
+            return -1;
+        int root = members.get(0);
+        for (int i = 1; i < members.size; i++)
+            root = union(root, members.get(i));
+        return root;
+    }
+
+    // Adds to members the components of done that are marked in seeds, and the ones of done that can get to them
+    // (or be got to from them, forwards) only through components of done
+    private void closeWithin(IntArray done, IntArray doneStamp, IntArray seeds, boolean forwards) {
+        pending.clear();
+        for (int i = 0; i < done.size; i++) {
+            int component = done.get(i);
+            if (seeds.get(component) == epoch && memberStamp.get(component) != epoch) {
+                memberStamp.set(component, epoch);
+                members.add(component);
+                pending.add(component);
+            }
+        }
+        IntArray firstEdge = forwards ? firstOut : firstIn;
+        IntArray nextEdge = forwards ? nextOut : nextIn;
+        IntArray ends = forwards ? outTarget : inSource;
+        while (pending.size > 0) {
+            int component = pending.pop();
+            for (int edge = firstEdge.get(component); edge >= 0; edge = nextEdge.get(edge)) {
+                int other = find(ends.get(edge));
+                if (doneStamp.get(other) == epoch && memberStamp.get(other) != epoch) {
+                    memberStamp.set(other, epoch);
+                    members.add(other);
+                    pending.add(other);
+                }
+            }
+        }
+    }
+
+    private int union(int a, int b) {
+        if (size.get(a) < size.get(b)) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent.set(b, a);
+        size.set(a, size.get(a) + size.get(b));
+        splice(a, b, firstOut, lastOut, nextOut);
+        splice(a, b, firstIn, lastIn, nextIn);
+        componentCount--;
+        return a;
+    }
+
+    private static void splice(int a, int b, IntArray first, IntArray last, IntArray next) {
+        if (first.get(b) < 0)
+            return;
+        if (last.get(a) < 0)
+            first.set(a, first.get(b));
+        else
+            next.set(last.get(a), first.get(b));
+        last.set(a, last.get(b));
+    }
+
+    // Everything the backward search went on from goes right after the highest label left backwards, then the merged
+    // component if any, then what the forward search went on from up to that label. The rest found forwards is after
+    // that label already, and the rest found backwards before it.
+    private void reorder(int merged) {
+        int after = backwardHeap.size > 0 ? backwardHeap.first() : -1;
+        long threshold = after >= 0 ? label.get(after) : Long.MIN_VALUE;
+        for (int i = 0; i < members.size; i++)
+            movedStamp.set(members.get(i), epoch);
+        sequence.clear();
+        forwardHeap.clear();
+        for (int i = 0; i < backward.size; i++)
+            move(backward.get(i));
+        popAll(forwardHeap, sequence);
+        if (merged >= 0)
+            sequence.add(merged);
+        for (int i = 0; i < forward.size; i++) {
+            if (label.get(forward.get(i)) <= threshold)
+                move(forward.get(i));
+        }
+        popAll(forwardHeap, sequence);
+        while (after >= 0 && movedStamp.get(after) == epoch)
+            after = previous.get(after);
+        for (int i = 0; i < members.size; i++)
+            unlink(members.get(i));
+        for (int i = 0; i < sequence.size; i++) {
+            if (sequence.get(i) != merged)
+                unlink(sequence.get(i));
+        }
+        insertAfter(after, sequence);
+    }
+
+    // Marks a component that isn't part of the merged one to be moved, keeping it in forwardHeap by label
+    private void move(int component) {
+        if (movedStamp.get(component) == epoch)
+            return;
+        movedStamp.set(component, epoch);
+        push(forwardHeap, component, false);
+    }
+
+    private void popAll(IntArray heap, IntArray out) {
+        while (heap.size > 0)
+            out.add(pop(heap, false));
+    }
+
+    private void append(int component) {
+        previous.set(component, last);
+        next.set(component, -1);
+        if (last >= 0)
+            next.set(last, component);
+        else
+            first = component;
+        long before = last >= 0 ? label.get(last) : 0;
+        last = component;
+        if (before > Long.MAX_VALUE - SPACING)
+            relabel();
+        else
+            label.set(component, before + SPACING);
+    }
+
+    private void unlink(int component) {
+        int before = previous.get(component);
+        int after = next.get(component);
+        if (before >= 0)
+            next.set(before, after);
+        else
+            first = after;
+        if (after >= 0)
+            previous.set(after, before);
+        else
+            last = before;
+    }
+
+    // Links the components of sequence in that order right after component, or first if it is -1, with labels
+    // between the ones around them
+    private void insertAfter(int component, IntArray sequence) {
+        if (sequence.size == 0)
+            return;
+        int after = component >= 0 ? next.get(component) : first;
+        for (int i = 0; i < sequence.size; i++) {
+            int inserted = sequence.get(i);
+            previous.set(inserted, i == 0 ? component : sequence.get(i - 1));
+            next.set(inserted, i == sequence.size - 1 ? after : sequence.get(i + 1));
+        }
+        if (component >= 0)
+            next.set(component, sequence.first());
+        else
+            first = sequence.first();
+        if (after >= 0)
+            previous.set(after, sequence.peek());
+        else
+            last = sequence.peek();
+        long low = component >= 0 ? label.get(component) : 0;
+        long high = after >= 0 ? label.get(after) : low + (sequence.size + 1) * SPACING;
+        long step = (high - low) / (sequence.size + 1);
+        if (step == 0 || high > Long.MAX_VALUE - SPACING) {
+            relabel();
+            return;
+        }
+        for (int i = 0; i < sequence.size; i++)
+            label.set(sequence.get(i), low + (i + 1) * step);
+    }
+
+    private void relabel() {
+        long value = 0;
+        for (int component = first; component >= 0; component = next.get(component)) {
+            value += SPACING;
+            label.set(component, value);
+        }
+    }
+
+    private void push(IntArray heap, int component, boolean highestFirst) {
+        heap.add(component);
+        int child = heap.size - 1;
+        while (child > 0) {
+            int up = (child - 1) >> 1;
+            if (!before(heap.get(child), heap.get(up), highestFirst))
+                break;
+            heap.swap(child, up);
+            child = up;
+        }
+    }
+
+    private int pop(IntArray heap, boolean highestFirst) {
+        int top = heap.first();
+        int last = heap.pop();
+        if (heap.size == 0)
+            return top;
+        heap.set(0, last);
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heap.size)
+                break;
+            if (child + 1 < heap.size && before(heap.get(child + 1), heap.get(child), highestFirst))
+                child++;
+            if (!before(heap.get(child), heap.get(index), highestFirst))
+                break;
+            heap.swap(child, index);
+            index = child;
+        }
+        return top;
+    }
+
+    private boolean before(int a, int b, boolean highestFirst) {
+        return highestFirst ? label.get(a) > label.get(b) : label.get(a) < label.get(b);
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int getNodeCount() {
+        return parent.size;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * IslandSolver.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.physics.AABB;
+
+// Updates the dynamic entities of a world in parallel. Entities can only touch each other during an update if their
+// swept boxes overlap, so entities are grouped (union-find) into islands that can't touch any entity of another
+// island, and islands are updated in several threads. Inside an island entities are updated in ID order and only
+// collide with the static index and the island itself, so results don't depend on the number of threads.
+// A packed group of entities is a single island even if they all move together, so it is updated by one thread.
+// The quadtree is not touched while islands are being updated, moved entities are reinserted afterwards.
+public class IslandSolver implements Disposable {
+    // Entities right next to each other can push each other
+    private static final double SWEEP_MARGIN = 0.01;
+    private World world;
+    private AsyncExecutor executor;
+    private Worker[] workers;
+    private AsyncResult<?>[] results;
+    private final Array<DynamicEntity> bodies = new Array<DynamicEntity>(false, 64);
+    private int[] parent = new int[0];
+    private int[] islandOf = new int[0];
+    // Pooled, only the first islandCount are in use
+    private final Array<Array<DynamicEntity>> islands = new Array<Array<DynamicEntity>>();
+    private int islandCount = 0;
+    private final Array<Entity> candidates = new Array<Entity>(false, 64);
+    private final AABB queryBox = new AABB(0, 0, 0, 0);
+
+    // Updates every threads-th island, starting from first
+    private class Worker implements AsyncTask<Void> {
+        private int first;
+        private float delta;
+
+        @Override
+        public Void call() {
+            for (int i = first; i < islandCount; i += workers.length) {
+                Array<DynamicEntity> island = islands.get(i);
+                for (int j = 0; j < island.size; j++)
+                    island.get(j).update(delta);
+            }
+            return null;
+        }
+    }
+
+    public IslandSolver(World world, int threads) {
+        this.world = world;
+        executor = new AsyncExecutor(threads);
+        workers = new Worker[threads];
+        results = new AsyncResult<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            workers[i].first = i;
+        }
+    }
+
+    // dynamicEntities must be sorted by ID, like the world keeps them
+    public void update(Array<DynamicEntity> dynamicEntities, float delta) {
+        bodies.clear();
+        bodies.addAll(dynamicEntities);
+        double maxSweep = 0;
+        for (int i = 0; i < bodies.size; i++) {
+            DynamicEntity e = bodies.get(i);
+            e.setIslandIndex(i);
+            e.prepareUpdate(delta);
+            maxSweep = Math.max(maxSweep, e.computeSweptBox(delta, SWEEP_MARGIN));
+        }
+        findIslands(maxSweep);
+
+        world.setQuadtreeUpdatesDeferred(true);
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].delta = delta;
+            results[i] = executor.submit(workers[i]);
+        }
+        for (int i = 0; i < results.length; i++) {
+            results[i].get();
+            results[i] = null;
+        }
+        world.setQuadtreeUpdatesDeferred(false);
+
+        for (int i = 0; i < bodies.size; i++) {
+            DynamicEntity e = bodies.get(i);
+            e.setIsland(null, 0);
+            e.setIslandIndex(-1);
+            if (e.getQuadtree() != null)
+                e.getQuadtree().update(e);
+        }
+    }
+
+    private void findIslands(double maxSweep) {
+        int n = bodies.size;
+        if (parent.length < n) {
+            parent = new int[Math.max(n, parent.length * 2)];
+            islandOf = new int[parent.length];
+        }
+        for (int i = 0; i < n; i++)
+            parent[i] = i;
+        // Two swept boxes can only overlap if one of them overlaps the other entity's box grown by maxSweep
+        for (int i = 0; i < n; i++) {
+            AABB swept = bodies.get(i).getSweptBox();
+            queryBox.set(swept.getX() - maxSweep, swept.getY() - maxSweep,
+                    swept.getWidth() + 2 * maxSweep, swept.getHeight() + 2 * maxSweep);
+            candidates.clear();
+            world.getQuadtree().collectPossibleCollidingEntities(queryBox, candidates);
+            for (int c = 0; c < candidates.size; c++) {
+                DynamicEntity other = (DynamicEntity) candidates.get(c);
+                int j = other.getIslandIndex();
+                if (j > i && swept.overlapsWith(other.getSweptBox()))
+                    union(i, j);
+            }
+        }
+        // Islands are numbered by their first entity, and entities are added in ID order
+        islandCount = 0;
+        for (int i = 0; i < n; i++) {
+            int root = find(i);
+            if (root == i) {
+                if (islandCount == islands.size)
+                    islands.add(new Array<DynamicEntity>(false, 4));
+                islands.get(islandCount).clear();
+                islandOf[i] = islandCount++;
+            }
+            Array<DynamicEntity> island = islands.get(islandOf[root]);
+            island.add(bodies.get(i));
+            bodies.get(i).setIsland(island, maxSweep);
+        }
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // The smallest index is kept as root, so the root of an island is its entity with the smallest ID
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else if (rootB < rootA)
+            parent[rootA] = rootB;
+    }
+
+    public int getIslandCount() {
+        return islandCount;
+    }
+
+    @Override
+    public void dispose() {
+        executor.dispose();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Level.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ShortArray;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.physics.TileCollisionMap;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// A level as stored in the binary level files, made from the text ones by LevelConverter in the desktop project.
+// Little endian, in this order:
+//   "PLVL", int version
+//   int columns, int rows
+//   int string count, and for each string a short with its UTF-8 length and the bytes
+//   int index of the level name in the strings
+//   columns * rows bytes with the tiles, row by row starting from the bottom one
+//   int spawn count, and for each spawn a short with the index of its EntityName in the strings,
+//   and floats x, y, velocity x and velocity y
+public class Level {
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = {'P', 'L', 'V', 'L'};
+    private static final int SPAWN_BYTES = 2 + 4 * 4;
+    private int columns;
+    private int rows;
+    // A view of the file, so the tiles of a memory mapped level are only paged in when they are read
+    private ByteBuffer tiles;
+    private Array<String> strings = new Array<String>();
+    private int name;
+    private ShortArray spawnTypes = new ShortArray();
+    private FloatArray spawnX = new FloatArray();
+    private FloatArray spawnY = new FloatArray();
+    private FloatArray spawnVelocityX = new FloatArray();
+    private FloatArray spawnVelocityY = new FloatArray();
+    // Each spawn type as an EntityName, resolved the first time it is spawned
+    private EntityFactory.EntityName[] types = null;
+    // Spawns sorted by chunk, each one the index of its chunk in the high half and its own in the low half, see indexSpawns
+    private long[] spawnsByChunk = null;
+    private int spawnChunkTiles;
+
+    public Level(String name, int columns, int rows) {
+        this(columns, rows, ByteBuffer.allocate(columns * rows));
+        this.name = addString(name);
+    }
+
+    private Level(int columns, int rows, ByteBuffer tiles) {
+        this.columns = columns;
+        this.rows = rows;
+        this.tiles = tiles;
+    }
+
+    // Reads from the current position of the buffer, which ends up right after the level
+    public static Level read(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (byte b : MAGIC) {
+            if (buffer.get() != b)
+                throw new IllegalArgumentException("Not a level file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Level file version " + version + ", expected " + VERSION);
+        int columns = buffer.getInt();
+        int rows = buffer.getInt();
+        if (columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("Levels need at least one tile, got " + columns + "x" + rows);
+        Array<String> strings = new Array<String>();
+        int stringCount = buffer.getInt();
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(bytes);
+            strings.add(decode(bytes));
+        }
+        int name = buffer.getInt();
+        if ((long) columns * rows > buffer.remaining())
+            throw new IllegalArgumentException("Level file is truncated");
+        ByteBuffer tiles = buffer.slice();
+        tiles.limit(columns * rows);
+        buffer.position(buffer.position() + columns * rows);
+        Level level = new Level(columns, rows, tiles);
+        level.strings = strings;
+        level.name = level.checkString(name);
+        int spawnCount = buffer.getInt();
+        if (spawnCount < 0 || spawnCount > buffer.remaining() / SPAWN_BYTES)
+            throw new IllegalArgumentException("Level file is truncated");
+        level.spawnTypes.ensureCapacity(spawnCount);
+        level.spawnX.ensureCapacity(spawnCount);
+        level.spawnY.ensureCapacity(spawnCount);
+        level.spawnVelocityX.ensureCapacity(spawnCount);
+        level.spawnVelocityY.ensureCapacity(spawnCount);
+        for (int i = 0; i < spawnCount; i++) {
+            level.spawnTypes.add(level.checkString(buffer.getShort()));
+            level.spawnX.add(buffer.getFloat());
+            level.spawnY.add(buffer.getFloat());
+            level.spawnVelocityX.add(buffer.getFloat());
+            level.spawnVelocityY.add(buffer.getFloat());
+        }
+        return level;
+    }
+
+    // Reads the whole file in one go, for the platforms where it can't be memory mapped
+    public static Level load(FileHandle file) {
+        return read(ByteBuffer.wrap(file.readBytes()));
+    }
+
+    public ByteBuffer write() {
+        byte[][] encoded = new byte[strings.size][];
+        int size = MAGIC.length + 4 * 4 + 4 + columns * rows + 4 + spawnTypes.size * SPAWN_BYTES;
+        for (int i = 0; i < strings.size; i++) {
+            encoded[i] = encode(strings.get(i));
+            size += 2 + encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(columns);
+        buffer.putInt(rows);
+        buffer.putInt(strings.size);
+        for (byte[] bytes : encoded) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.putInt(name);
+        ByteBuffer allTiles = tiles.duplicate();
+        allTiles.rewind();
+        buffer.put(allTiles);
+        buffer.putInt(spawnTypes.size);
+        for (int i = 0; i < spawnTypes.size; i++) {
+            buffer.putShort(spawnTypes.get(i));
+            buffer.putFloat(spawnX.get(i));
+            buffer.putFloat(spawnY.get(i));
+            buffer.putFloat(spawnVelocityX.get(i));
+            buffer.putFloat(spawnVelocityY.get(i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // The world has to be getWidth() by getHeight() and empty, with the player controls already set.
+    // Tiles are copied in one go and the static index is built once at the end.
+    public void populate(World world) {
+        TileCollisionMap tileMap = world.getDenseTileMap();
+        if (tileMap == null)
+            throw new IllegalArgumentException("Streamed worlds load their level by chunks, see World(Level, int, AssetManager)");
+        if (tileMap.getColumns() != columns || tileMap.getRows() != rows)
+            throw new IllegalArgumentException("Level " + getName() + " is " + columns + "x" + rows + " tiles, the world "
+                    + tileMap.getColumns() + "x" + tileMap.getRows());
+        tileMap.setTiles(tiles);
+        EntityFactory entityFactory = new EntityFactory(world);
+        for (int i = 0; i < spawnTypes.size; i++)
+            spawn(i, entityFactory);
+        world.buildStaticIndex();
+    }
+
+    public void spawn(int index, EntityFactory entityFactory) {
+        entityFactory.createEntityInWorld(getSpawnType(index), spawnX.get(index), spawnY.get(index),
+                spawnVelocityX.get(index), spawnVelocityY.get(index));
+    }
+
+    public EntityFactory.EntityName getSpawnType(int index) {
+        // Only the strings that are used as spawn types have to be entity names
+        if (types == null)
+            types = new EntityFactory.EntityName[strings.size];
+        short type = spawnTypes.get(index);
+        if (types[type] == null)
+            types[type] = EntityFactory.EntityName.valueOf(strings.get(type));
+        return types[type];
+    }
+
+    // Sorts the spawns by the chunk of chunkTiles x chunkTiles tiles they are in, so collectSpawns doesn't have to go
+    // through all of them. Spawns outside of the level go to the closest chunk. Takes 8 bytes per spawn.
+    public void indexSpawns(int chunkTiles) {
+        int chunkColumns = (columns + chunkTiles - 1) / chunkTiles;
+        int chunkRows = (rows + chunkTiles - 1) / chunkTiles;
+        double chunkSize = chunkTiles * TileCollisionMap.TILE_SIZE;
+        spawnsByChunk = new long[spawnTypes.size];
+        spawnChunkTiles = chunkTiles;
+        for (int i = 0; i < spawnTypes.size; i++) {
+            int column = Math.max(0, Math.min(chunkColumns - 1, (int) Math.floor(spawnX.get(i) / chunkSize)));
+            int row = Math.max(0, Math.min(chunkRows - 1, (int) Math.floor(spawnY.get(i) / chunkSize)));
+            spawnsByChunk[i] = ((long) (row * chunkColumns + column) << 32) | i;
+        }
+        Arrays.sort(spawnsByChunk);
+    }
+
+    // Appends to out the spawns of a chunk inside the level in the order they were added, after indexSpawns
+    public void collectSpawns(int chunkColumn, int chunkRow, IntArray out) {
+        long chunk = (long) (chunkRow * ((columns + spawnChunkTiles - 1) / spawnChunkTiles) + chunkColumn) << 32;
+        int low = 0;
+        int high = spawnsByChunk.length;
+        while (low < high) { // The first spawn of the chunk or any after it
+            int middle = (low + high) >>> 1;
+            if (spawnsByChunk[middle] < chunk)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        for (int i = low; i < spawnsByChunk.length && (spawnsByChunk[i] & 0xffffffff00000000L) == chunk; i++)
+            out.add((int) spawnsByChunk[i]);
+    }
+
+    // Copies a rectangle of tiles to out, which has rows of outWidth tiles starting from the bottom one.
+    // Only reads the level, so several threads can copy at the same time.
+    public void copyTiles(int firstColumn, int firstRow, int width, int height, byte[] out, int outWidth) {
+        ByteBuffer view = tiles.duplicate();
+        for (int row = 0; row < height; row++) {
+            view.position((firstRow + row) * columns + firstColumn);
+            view.get(out, row * outWidth, width);
+        }
+    }
+
+    // Replaces every tile, source has them row by row starting from the bottom one
+    public void setTiles(byte[] source) {
+        if (source.length != columns * rows)
+            throw new IllegalArgumentException("Expected " + columns * rows + " tiles, got " + source.length);
+        ByteBuffer view = tiles.duplicate();
+        view.rewind();
+        view.put(source);
+    }
+
+    public void setTile(int column, int row, byte tile) {
+        tiles.put(row * columns + column, tile);
+    }
+
+    public byte getTile(int column, int row) {
+        return tiles.get(row * columns + column);
+    }
+
+    public void addSpawn(EntityFactory.EntityName type, float x, float y, float velocityX, float velocityY) {
+        spawnTypes.add((short) addString(type.name()));
+        spawnX.add(x);
+        spawnY.add(y);
+        spawnVelocityX.add(velocityX);
+        spawnVelocityY.add(velocityY);
+    }
+
+    // Index of the string in the table, adding it if it isn't there yet
+    private int addString(String string) {
+        int index = strings.indexOf(string, false);
+        if (index >= 0)
+            return index;
+        if (strings.size > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Too many different strings in level");
+        strings.add(string);
+        return strings.size - 1;
+    }
+
+    private short checkString(int index) {
+        if (index < 0 || index >= strings.size)
+            throw new IllegalArgumentException("Bad string index " + index + " in level file");
+        return (short) index;
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(String string) {
+        try {
+            byte[] bytes = string.getBytes("UTF-8");
+            if (bytes.length > 0xffff)
+                throw new IllegalArgumentException("String too long for a level file");
+            return bytes;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Index of the first spawn of that type, or -1
+    public int findSpawn(EntityFactory.EntityName type) {
+        int name = strings.indexOf(type.name(), false);
+        for (int i = 0; i < spawnTypes.size; i++) {
+            if (spawnTypes.get(i) == name)
+                return i;
+        }
+        return -1;
+    }
+
+    public String getName() {
+        return strings.get(name);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getWidth() {
+        return columns * TileCollisionMap.TILE_SIZE;
+    }
+
+    public double getHeight() {
+        return rows * TileCollisionMap.TILE_SIZE;
+    }
+
+    public int getSpawnCount() {
+        return spawnTypes.size;
+    }
+
+    public float getSpawnX(int index) {
+        return spawnX.get(index);
+    }
+
+    public float getSpawnY(int index) {
+        return spawnY.get(index);
+    }
+}
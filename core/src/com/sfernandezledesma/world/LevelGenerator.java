@@ -0,0 +1,187 @@
+/*
+ * LevelGenerator.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.entities.Hero;
+import com.sfernandezledesma.physics.TileCollisionMap;
+
+import java.nio.ByteBuffer;
+
+// Makes cave levels away from the render thread, in stages: carve the caves (CaveGenerator), build their walkability
+// graph, repair it with ladders and bake the tiles and the hero spawn into a Level, which only has to populate a world.
+// Carving is done by bands of rows that a pool of workers split between them, one step of the automaton at a time.
+// The graph and its repair are about the whole level, so they run in one thread. Levels are generated one after the
+// other in a thread of their own, and only depend on their seed, not on the number of workers.
+// Where there are no threads (WebGL) generate runs everything before returning.
+public class LevelGenerator implements Disposable {
+    private final int columns;
+    private final int rows;
+    private final float timeStep;
+    private final AsyncExecutor pipeline = new AsyncExecutor(1);
+    private final AsyncExecutor executor;
+    private final Worker[] workers;
+    private final AsyncResult<?>[] results;
+    // The tiles being carved and the ones of the last step
+    private byte[] tiles;
+    private byte[] previous;
+
+    private enum Stage {FILL, SMOOTH}
+
+    // Does every threads-th band of a stage, starting from first
+    private class Worker implements AsyncTask<Void> {
+        private int first;
+        private Stage stage;
+        private long seed;
+
+        @Override
+        public Void call() {
+            for (int band = first; band < CaveGenerator.getBandCount(rows); band += workers.length) {
+                if (stage == Stage.FILL)
+                    CaveGenerator.fill(tiles, columns, rows, band, seed);
+                else
+                    CaveGenerator.smooth(previous, tiles, columns, rows, band);
+            }
+            return null;
+        }
+    }
+
+    // timeStep is the one the world is updated with, see WalkabilityGraph
+    public LevelGenerator(int columns, int rows, float timeStep, int threads) {
+        this.columns = columns;
+        this.rows = rows;
+        this.timeStep = timeStep;
+        executor = new AsyncExecutor(threads);
+        workers = new Worker[threads];
+        results = new AsyncResult<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+            workers[i].first = i;
+        }
+    }
+
+    // Starts generating a level after the ones already asked for
+    public AsyncResult<Level> generate(final long seed) {
+        return pipeline.submit(new AsyncTask<Level>() {
+            @Override
+            public Level call() {
+                return generateNow(seed);
+            }
+        });
+    }
+
+    // Every stage in the calling thread, with the help of the workers. Only one level at a time.
+    public Level generateNow(long seed) {
+        carve(seed);
+        TileCollisionMap tileMap = new TileCollisionMap(columns, rows);
+        tileMap.setTiles(ByteBuffer.wrap(tiles));
+        WalkabilityGraph walkability = new WalkabilityGraph(tileMap, timeStep);
+        walkability.repair();
+        return bake(walkability, seed);
+    }
+
+    private void carve(long seed) {
+        if (tiles == null) {
+            tiles = new byte[columns * rows];
+            previous = new byte[columns * rows];
+        }
+        runWorkers(Stage.FILL, seed);
+        for (int iteration = 0; iteration < CaveGenerator.ITERATIONS; iteration++) {
+            byte[] swap = previous;
+            previous = tiles;
+            tiles = swap;
+            runWorkers(Stage.SMOOTH, seed);
+        }
+        CaveGenerator.closeBorder(tiles, columns, rows);
+    }
+
+    // Every band of the stage is done when it returns
+    private void runWorkers(Stage stage, long seed) {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].stage = stage;
+            workers[i].seed = seed;
+            results[i] = executor.submit(workers[i]);
+        }
+        for (int i = 0; i < results.length; i++) {
+            results[i].get();
+            results[i] = null;
+        }
+    }
+
+    // The repaired tiles, and the hero on the node of the biggest component closest to the bottom left corner
+    private Level bake(WalkabilityGraph walkability, long seed) {
+        TileCollisionMap tileMap = walkability.getTileMap();
+        Level level = new Level("cave " + seed, columns, rows);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++)
+                tiles[row * columns + column] = tileMap.getTile(column, row);
+        }
+        level.setTiles(tiles);
+        int start = findStart(walkability);
+        if (start >= 0) {
+            float x = walkability.getNodeColumn(start) * TileCollisionMap.TILE_SIZE + (float) (TileCollisionMap.TILE_SIZE - Hero.WIDTH) / 2;
+            float y = walkability.getNodeRow(start) * TileCollisionMap.TILE_SIZE;
+            level.addSpawn(EntityFactory.EntityName.HERO, x, y, 0, 0);
+        }
+        return level;
+    }
+
+    // -1 if the cave has no room for the hero
+    private static int findStart(WalkabilityGraph walkability) {
+        int[] sizes = new int[walkability.getComponentCount()];
+        int biggest = -1;
+        for (int node = 0; node < walkability.getNodeCount(); node++) {
+            int component = walkability.getComponent(node);
+            if (component < 0) // Under a ladder
+                continue;
+            sizes[component]++;
+            if (biggest < 0 || sizes[component] > sizes[biggest])
+                biggest = component;
+        }
+        int start = -1;
+        for (int node = 0; node < walkability.getNodeCount(); node++) {
+            if (walkability.getComponent(node) == biggest && (start < 0
+                    || distanceToCorner(walkability, node) < distanceToCorner(walkability, start)))
+                start = node;
+        }
+        return start;
+    }
+
+    private static int distanceToCorner(WalkabilityGraph walkability, int node) {
+        return walkability.getNodeColumn(node) + walkability.getNodeRow(node);
+    }
+
+    @Override
+    public void dispose() {
+        pipeline.dispose();
+        executor.dispose();
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
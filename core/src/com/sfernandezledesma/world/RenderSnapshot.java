@@ -0,0 +1,99 @@
+/*
+ * RenderSnapshot.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.utils.Array;
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.physics.AABB;
+
+// What the dynamic entities inside a view looked like after some world update, copied so it can be drawn while the
+// world keeps being updated in another thread. The simulation captures it and the render thread draws it, never at
+// the same time (see ThreadedSimulation).
+public class RenderSnapshot {
+    private int size = 0;
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] previousX = new float[0];
+    private float[] previousY = new float[0];
+    private GameSprite[] sprites = new GameSprite[0];
+    private GameSprite.State[] states = new GameSprite.State[0];
+    private int[] frames = new int[0];
+    private boolean[] facingRight = new boolean[0];
+    // How far the simulation was between its last update and the next one when this was captured
+    private float alpha = 1f;
+    private final Array<Entity> candidates = new Array<Entity>(false, 64);
+
+    // Called from the simulation thread, after updating the world
+    public void capture(World world, AABB box, float alpha) {
+        this.alpha = alpha;
+        candidates.clear();
+        world.getQuadtree().collectPossibleCollidingEntities(box, candidates);
+        ensureCapacity(candidates.size);
+        size = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            DynamicEntity e = (DynamicEntity) candidates.get(i); // The quadtree only holds dynamic entities
+            GameSprite sprite = e.getGameSprite();
+            x[size] = (float) e.getX();
+            y[size] = (float) e.getY();
+            previousX[size] = (float) e.getPreviousX();
+            previousY[size] = (float) e.getPreviousY();
+            sprites[size] = sprite;
+            states[size] = sprite.getState();
+            frames[size] = sprite.getFrame();
+            facingRight[size] = sprite.isFacingRight();
+            size++;
+        }
+        for (int i = size; i < sprites.length && sprites[i] != null; i++)
+            sprites[i] = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sprites.length)
+            return;
+        capacity = Math.max(capacity, sprites.length * 2);
+        x = new float[capacity];
+        y = new float[capacity];
+        previousX = new float[capacity];
+        previousY = new float[capacity];
+        sprites = new GameSprite[capacity];
+        states = new GameSprite.State[capacity];
+        frames = new int[capacity];
+        facingRight = new boolean[capacity];
+    }
+
+    // Called from the render thread, between begin and end of the batch
+    public void render(Batch batch) {
+        for (int i = 0; i < size; i++) {
+            float drawX = previousX[i] + (x[i] - previousX[i]) * alpha;
+            float drawY = previousY[i] + (y[i] - previousY[i]) * alpha;
+            sprites[i].draw(batch, drawX, drawY, states[i], frames[i], facingRight[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+}
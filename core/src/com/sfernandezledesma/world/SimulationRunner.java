@@ -0,0 +1,56 @@
+/*
+ * SimulationRunner.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+// Advances a world with a fixed time step as fast as possible, without rendering nor waiting for frames
+public class SimulationRunner {
+    private World world;
+    private float step;
+    private long ticks = 0;
+
+    public SimulationRunner(World world, float step) {
+        this.world = world;
+        this.step = step;
+    }
+
+    // Returns how many nanoseconds it took
+    public long run(int ticksToRun) {
+        long start = TimeUtils.nanoTime();
+        for (int i = 0; i < ticksToRun; i++) {
+            world.update(step);
+        }
+        ticks += ticksToRun;
+        return TimeUtils.nanoTime() - start;
+    }
+
+    // Simulated time so far
+    public double getElapsedSeconds() {
+        return ticks * (double) step;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public float getStep() {
+        return step;
+    }
+}
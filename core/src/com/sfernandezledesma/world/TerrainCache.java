@@ -0,0 +1,211 @@
+/*
+ * TerrainCache.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.sfernandezledesma.entities.StaticEntity;
+import com.sfernandezledesma.graphics.TileMapRenderer;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
+import com.sfernandezledesma.utils.Log;
+
+// The terrain never changes, so its sprites are uploaded once to SpriteCaches instead of going through the batch every
+// frame. The world is split in chunks of CHUNK_TILES x CHUNK_TILES tiles, each one a cache of its own, and only the
+// visible chunks are drawn, with one draw call each. Static entities belong to the chunk of their bottom left corner.
+// Tiles set after building are not drawn.
+public class TerrainCache implements Disposable {
+    public static final int CHUNK_TILES = 32;
+    private static final int CHUNK_SIZE = CHUNK_TILES * TileMap.TILE_SIZE;
+    // Limit of SpriteCache when using indices
+    private static final int MAX_SPRITES_PER_CACHE = 8191;
+    private Array<SpriteCache> caches = new Array<SpriteCache>();
+    private int columns;
+    private int rows;
+    // For each chunk, the SpriteCache holding it (-1 if the chunk is empty) and its id in there
+    private int[] chunkCache;
+    private int[] chunkCacheId;
+    private int[] chunkSprites;
+    // How many chunks to the left and below the view can still have static entities reaching into it
+    private int reachColumns = 0;
+    private int reachRows = 0;
+    private int renderedChunks = 0;
+    private int renderedSprites = 0;
+
+    public TerrainCache(TileMap tileMap, TileMapRenderer tileMapRenderer, Array<StaticEntity> staticEntities) {
+        columns = (tileMap.getColumns() + CHUNK_TILES - 1) / CHUNK_TILES;
+        rows = (tileMap.getRows() + CHUNK_TILES - 1) / CHUNK_TILES;
+        chunkCache = new int[columns * rows];
+        chunkCacheId = new int[columns * rows];
+        chunkSprites = new int[columns * rows];
+        Array<StaticEntity>[] chunkEntities = groupByChunk(staticEntities);
+        for (int row = 0; row < tileMap.getRows(); row++) {
+            for (int column = 0; column < tileMap.getColumns(); column++) {
+                if (tileMapRenderer.getTileRegion(tileMap.getTile(column, row)) != null)
+                    chunkSprites[chunkOf(column, row)]++;
+            }
+        }
+        for (int chunk = 0; chunk < chunkSprites.length; chunk++) {
+            chunkSprites[chunk] += chunkEntities[chunk] == null ? 0 : chunkEntities[chunk].size;
+            if (chunkSprites[chunk] > MAX_SPRITES_PER_CACHE) {
+                Log.log("TERRAIN CACHE", "Chunk " + chunk + " has too many sprites, some won't be drawn.");
+                chunkSprites[chunk] = MAX_SPRITES_PER_CACHE;
+            }
+        }
+        // Consecutive chunks share a SpriteCache while they fit in it
+        SpriteCache cache = null;
+        int free = 0;
+        for (int chunk = 0; chunk < chunkSprites.length; chunk++) {
+            chunkCache[chunk] = -1;
+            if (chunkSprites[chunk] == 0)
+                continue;
+            if (chunkSprites[chunk] > free) {
+                cache = new SpriteCache(spritesFrom(chunk), true);
+                caches.add(cache);
+                free = MAX_SPRITES_PER_CACHE;
+            }
+            free -= chunkSprites[chunk];
+            chunkCache[chunk] = caches.size - 1;
+            cache.beginCache();
+            addChunk(cache, chunk, tileMap, tileMapRenderer, chunkEntities[chunk]);
+            chunkCacheId[chunk] = cache.endCache();
+        }
+    }
+
+    private Array<StaticEntity>[] groupByChunk(Array<StaticEntity> staticEntities) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Array<StaticEntity>[] chunkEntities = new Array[columns * rows];
+        for (int i = 0; i < staticEntities.size; i++) {
+            StaticEntity e = staticEntities.get(i);
+            AABB box = e.getBox();
+            int column = chunkColumnOf(box.leftSideX());
+            int row = chunkRowOf(box.bottomSideY());
+            reachColumns = Math.max(reachColumns, chunkColumnOf(box.rightSideX()) - column);
+            reachRows = Math.max(reachRows, chunkRowOf(box.topSideY()) - row);
+            int chunk = row * columns + column;
+            if (chunkEntities[chunk] == null)
+                chunkEntities[chunk] = new Array<StaticEntity>(false, 16);
+            chunkEntities[chunk].add(e);
+        }
+        return chunkEntities;
+    }
+
+    // How big the next SpriteCache has to be to hold the chunks starting at this one
+    private int spritesFrom(int firstChunk) {
+        int sprites = 0;
+        for (int chunk = firstChunk; chunk < chunkSprites.length; chunk++) {
+            if (sprites + chunkSprites[chunk] > MAX_SPRITES_PER_CACHE)
+                break;
+            sprites += chunkSprites[chunk];
+        }
+        return sprites;
+    }
+
+    private void addChunk(SpriteCache cache, int chunk, TileMap tileMap, TileMapRenderer tileMapRenderer,
+                          Array<StaticEntity> entities) {
+        int size = TileMap.TILE_SIZE;
+        int sprites = 0;
+        int firstColumn = (chunk % columns) * CHUNK_TILES;
+        int firstRow = (chunk / columns) * CHUNK_TILES;
+        int lastColumn = Math.min(tileMap.getColumns(), firstColumn + CHUNK_TILES) - 1;
+        int lastRow = Math.min(tileMap.getRows(), firstRow + CHUNK_TILES) - 1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                TextureRegion region = tileMapRenderer.getTileRegion(tileMap.getTile(column, row));
+                if (region != null && sprites < chunkSprites[chunk]) {
+                    cache.add(region, column * size, row * size, size, size);
+                    sprites++;
+                }
+            }
+        }
+        if (entities == null)
+            return;
+        for (int i = 0; i < entities.size && sprites < chunkSprites[chunk]; i++) {
+            entities.get(i).addTo(cache);
+            sprites++;
+        }
+    }
+
+    // Draws the chunks that overlap view. Must not be called between begin and end of a batch.
+    public void render(Matrix4 projection, AABB view) {
+        renderedChunks = 0;
+        renderedSprites = 0;
+        int firstColumn = Math.max(0, chunkColumnOf(view.leftSideX()) - reachColumns);
+        int lastColumn = chunkColumnOf(view.rightSideX());
+        int firstRow = Math.max(0, chunkRowOf(view.bottomSideY()) - reachRows);
+        int lastRow = chunkRowOf(view.topSideY());
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        for (int c = 0; c < caches.size; c++) {
+            SpriteCache cache = null;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int chunk = row * columns + column;
+                    if (chunkCache[chunk] != c)
+                        continue;
+                    if (cache == null) {
+                        cache = caches.get(c);
+                        cache.setProjectionMatrix(projection);
+                        cache.begin();
+                    }
+                    cache.draw(chunkCacheId[chunk]);
+                    renderedChunks++;
+                    renderedSprites += chunkSprites[chunk];
+                }
+            }
+            if (cache != null)
+                cache.end();
+        }
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+    }
+
+    private int chunkOf(int tileColumn, int tileRow) {
+        return (tileRow / CHUNK_TILES) * columns + tileColumn / CHUNK_TILES;
+    }
+
+    private int chunkColumnOf(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / CHUNK_SIZE)));
+    }
+
+    private int chunkRowOf(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / CHUNK_SIZE)));
+    }
+
+    // Chunks drawn by the last call to render
+    public int getRenderedChunks() {
+        return renderedChunks;
+    }
+
+    // Sprites drawn by the last call to render, none of them was sent to the GPU this frame
+    public int getRenderedSprites() {
+        return renderedSprites;
+    }
+
+    @Override
+    public void dispose() {
+        for (SpriteCache cache : caches)
+            cache.dispose();
+        caches.clear();
+    }
+}
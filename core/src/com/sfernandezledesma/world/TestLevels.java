@@ -0,0 +1,66 @@
+/*
+ * TestLevels.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.graphics.GameSprite;
+import com.sfernandezledesma.physics.AABB;
+
+// Hand made levels for trying things out. They only use the world, so they can be played or simulated headless.
+public class TestLevels {
+    public static void playground(World world, GameSprite wallSprite, double vx, double vy) {
+        EntityFactory entityFactory = new EntityFactory(world);
+        entityFactory.createEntityInWorld(EntityFactory.EntityName.HERO, 128, 350);
+        for (int i = 0; i < 512; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 0);
+        }
+        for (int i = 0; i < 192; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 48);
+        }
+        for (int i = 272; i < 512; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 48);
+        }
+        for (int i = 128; i < 240; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.GROUND, i, 96);
+        }
+        for (int i = 64; i < 112; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.LADDER, 112, i);
+        }
+        for (int i = 0; i < 196; i += 16) {
+            entityFactory.createEntityInWorld(EntityFactory.EntityName.ONEWAY, i, 128);
+        }
+        DynamicEntity movingWall1 = new DynamicEntity(new AABB(272, 272, wallSprite.getWidth(), wallSprite.getHeight()), wallSprite, true, world);
+        movingWall1.setVelocityX(vx);
+        movingWall1.setVelocityY(vy);
+        DynamicEntity movingWall2 = new DynamicEntity(new AABB(288, 272, wallSprite.getWidth(), wallSprite.getHeight()), wallSprite, true, world);
+        movingWall2.setVelocityX(vx);
+        movingWall2.setVelocityY(vy);
+    }
+
+    public static void movingWalls(World world, GameSprite wallSprite, double vx, double vy) {
+        for (int i = 8; i < 32; i++) {
+            for (int j = 24; j > 5; j--) {
+                DynamicEntity movingWall = new DynamicEntity(new AABB(16 * i, 16 * j, 16, 16), wallSprite, true, world);
+                movingWall.setVelocityY(vy);
+                movingWall.setVelocityX(vx);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * ThreadedSimulation.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+import com.sfernandezledesma.physics.AABB;
+
+// Updates the world in a worker thread while the render thread draws what the previous updates left, so physics time
+// doesn't add to frame time. Every frame the render thread calls finishUpdates, which waits for the updates started
+// the frame before and swaps the two snapshots, then startUpdates and, while those run, draws the snapshot it got.
+// Nothing but the worker may touch the world between startUpdates and the next finishUpdates.
+// On platforms without threads (GWT) the updates just run inside startUpdates.
+public class ThreadedSimulation implements Disposable {
+    private World world;
+    private AsyncExecutor executor = new AsyncExecutor(1);
+    private RenderSnapshot front = new RenderSnapshot();
+    private RenderSnapshot back = new RenderSnapshot();
+    private AsyncResult<Void> pending = null;
+    private final Updates updates = new Updates();
+
+    // Reused every frame, only read by the worker while it is pending
+    private class Updates implements AsyncTask<Void> {
+        private int steps;
+        private float step;
+        private float alpha;
+        private final AABB view = new AABB(0, 0, 0, 0);
+
+        @Override
+        public Void call() {
+            for (int i = 0; i < steps; i++)
+                world.update(step);
+            back.capture(world, view, alpha);
+            return null;
+        }
+    }
+
+    public ThreadedSimulation(World world) {
+        this.world = world;
+    }
+
+    // Runs steps updates of step seconds and then captures the dynamic entities inside view. alpha is what
+    // FixedTimestep.getAlpha returns after those steps.
+    public void startUpdates(int steps, float step, float alpha, AABB view) {
+        finishUpdates();
+        updates.steps = steps;
+        updates.step = step;
+        updates.alpha = alpha;
+        updates.view.set(view.getX() - World.RENDER_MARGIN, view.getY() - World.RENDER_MARGIN,
+                view.getWidth() + 2 * World.RENDER_MARGIN, view.getHeight() + 2 * World.RENDER_MARGIN);
+        pending = executor.submit(updates);
+    }
+
+    // Waits until the worker is done with the world, and returns the newest snapshot
+    public RenderSnapshot finishUpdates() {
+        if (pending != null) {
+            pending.get();
+            pending = null;
+            RenderSnapshot captured = back;
+            back = front;
+            front = captured;
+        }
+        return front;
+    }
+
+    public RenderSnapshot getSnapshot() {
+        return front;
+    }
+
+    @Override
+    public void dispose() {
+        finishUpdates();
+        executor.dispose();
+    }
+}
@@ -0,0 +1,754 @@
+/*
+ * WalkabilityGraph.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.sfernandezledesma.entities.Hero;
+import com.sfernandezledesma.physics.TileCollisionMap;
+
+import java.util.Arrays;
+
+// The digraph of notas.txt. Nodes are the free tiles the hero can stand on (with a platform right below) and there is
+// an edge from v to w when the hero can get from v to w walking, jumping, falling or using a ladder.
+// Jumps and falls come from the hero's constants: each move is simulated once, tick by tick, from the bottom center of
+// a tile and kept as a template of the cells it goes through, so following it from a node only reads tiles. The hero
+// never turns around in the air and bumping into anything ends the move, so there are fewer edges than moves a player
+// can make, never more.
+// The notes keep a pair (w, v) for each edge v -> w without a way back and fix them one by one. A pair is broken exactly
+// when w's strongly connected component can't reach v's, so repair works on components instead: each round finds them
+// in one pass over the graph, and gives every component but the biggest one the shortest ladder that joins it to the
+// biggest one. Ladders go both ways, so one is enough for each. Pockets with no room for a ladder stay as they are.
+public class WalkabilityGraph {
+    public static final int MAX_ROUNDS = 32;
+    // Added to the length of ladders that don't join the main component, see placeLadders
+    private static final int NOT_WANTED = 1 << 20;
+    private static final int FREE = 0; // The cell has to be passable
+    private static final int LAND = 1; // Crossed into from above, the move ends there if it's a node
+    private final TileCollisionMap tileMap;
+    private final int columns;
+    private final int rows;
+    // Node of each tile, or -1
+    private final int[] nodeOf;
+    // Node the hero lands on falling straight down from each tile, or -1, so a fall is a single read
+    private final int[] landing;
+    private final IntArray nodeColumns = new IntArray();
+    private final IntArray nodeRows = new IntArray();
+    // Adjacency lists as linked lists in flat arrays. The edges of a node are replaced by starting a new list, the old
+    // one is left behind.
+    private final IntArray firstEdge = new IntArray();
+    private final IntArray nextEdge = new IntArray();
+    private final IntArray edgeTarget = new IntArray();
+    private int edgeCount = 0;
+    // Strongly connected component of each node, as of the last call to findComponents
+    private final IntArray component = new IntArray();
+    private int componentCount = 0;
+    // Moves, the entries of move i go from moveStart[i] to moveStart[i + 1]. After the last entry the hero falls straight
+    // down from the tail cell. Falls off an edge only apply when the tile next to the node in gap direction isn't a node.
+    private final IntArray moveStart = new IntArray();
+    private final IntArray moveGap = new IntArray();
+    private final IntArray tailColumn = new IntArray();
+    private final IntArray tailRow = new IntArray();
+    private final IntArray entryKind = new IntArray();
+    private final IntArray entryColumn = new IntArray();
+    private final IntArray entryRow = new IntArray();
+    // The earlier move whose entries start like the ones of each move, and how many of them are the same, or -1 and 0.
+    // Moves are followed from a node in order, so follow only reads again what that move didn't.
+    private final IntArray baseMove = new IntArray();
+    private final IntArray sharedEntries = new IntArray();
+    // Of the last time each move was followed: how many of its entries it went through, and if it ended on the next one
+    // the node it ended in
+    private int[] movePassed;
+    private boolean[] moveEnded;
+    private int[] moveEnd;
+    // The LAND entries of every move, each cell once
+    private final IntArray landColumn = new IntArray();
+    private final IntArray landRow = new IntArray();
+    // Nodes marked with the current epoch when collecting the nodes the ladders of a repair round affect
+    private final IntArray stamp = new IntArray();
+    private final IntArray queue = new IntArray();
+    private int epoch = 0;
+    // Kept up to date as ladders are placed, so a round can tell what its earlier ladders already joined
+    private final IncrementalComponents reachability = new IncrementalComponents();
+    private int laddersPlaced = 0;
+
+    // timeStep is the one the world is updated with, the moves are simulated with it
+    public WalkabilityGraph(TileCollisionMap tileMap, float timeStep) {
+        this.tileMap = tileMap;
+        columns = tileMap.getColumns();
+        rows = tileMap.getRows();
+        nodeOf = new int[columns * rows];
+        landing = new int[columns * rows];
+        addMoves(timeStep);
+        for (int row = rows - 1; row >= 0; row--) { // Node IDs go from the highest row down, as in the notes
+            for (int column = 0; column < columns; column++) {
+                nodeOf[row * columns + column] = -1;
+                if (isPassable(column, row) && isPlatform(column, row - 1))
+                    addNode(column, row);
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int tile = row * columns + column;
+                if (!isPassable(column, row))
+                    landing[tile] = -1;
+                else
+                    landing[tile] = nodeOf[tile] >= 0 ? nodeOf[tile] : fall(column, row - 1);
+            }
+        }
+        for (int node = 0; node < nodeColumns.size; node++)
+            addEdgesOf(node);
+        findComponents();
+    }
+
+    private void addMoves(float timeStep) {
+        // Far enough to land back at the height of the jump
+        int maxTiles = (int) Math.ceil(Hero.HORIZONTAL_VELOCITY * 2 * Hero.JUMP_VELOCITY / Hero.GRAVITY_ACCEL / TileCollisionMap.TILE_SIZE);
+        addMove(0, 0, Hero.JUMP_VELOCITY, timeStep); // Only useful to get onto a one way platform above
+        for (int direction = -1; direction <= 1; direction += 2) {
+            for (int tiles = 1; tiles <= maxTiles; tiles++) {
+                addMove(direction, tiles, Hero.JUMP_VELOCITY, timeStep);
+                addMove(direction, tiles, 0, timeStep); // Walking off an edge
+            }
+        }
+        moveStart.add(entryKind.size); // So the entries of move i always end at moveStart[i + 1]
+        for (int move = 0; move < moveGap.size; move++) {
+            baseMove.add(-1);
+            sharedEntries.add(0);
+            for (int base = 0; base < move; base++) {
+                int shared = 0;
+                while (moveStart.get(base) + shared < moveStart.get(base + 1)
+                        && moveStart.get(move) + shared < moveStart.get(move + 1)
+                        && isSameEntry(moveStart.get(base) + shared, moveStart.get(move) + shared))
+                    shared++;
+                if (shared > sharedEntries.get(move)) {
+                    baseMove.set(move, base);
+                    sharedEntries.set(move, shared);
+                }
+            }
+        }
+        movePassed = new int[moveGap.size];
+        moveEnded = new boolean[moveGap.size];
+        moveEnd = new int[moveGap.size];
+    }
+
+    private boolean isSameEntry(int i, int j) {
+        return entryKind.get(i) == entryKind.get(j) && entryColumn.get(i) == entryColumn.get(j)
+                && entryRow.get(i) == entryRow.get(j);
+    }
+
+    // Moves tiles tiles to the side at full speed and then keeps still, until the hero is falling
+    private void addMove(int direction, int tiles, double velocityY, float timeStep) {
+        double size = TileCollisionMap.TILE_SIZE;
+        double endX = size / 2 + direction * tiles * size;
+        double x = velocityY == 0 ? size / 2 + direction * size : size / 2; // Falls start over the next tile
+        double y = 0;
+        IntArray visited = new IntArray(); // Cells already checked, packed
+        moveStart.add(entryKind.size);
+        moveGap.add(velocityY == 0 ? direction : 0);
+        addCells(x, y, visited);
+        while (x != endX || velocityY >= 0) {
+            velocityY -= Hero.GRAVITY_ACCEL * timeStep;
+            double previousY = y;
+            y += velocityY * timeStep;
+            if (x != endX) {
+                x += direction * Hero.HORIZONTAL_VELOCITY * timeStep;
+                if ((x - endX) * direction > 0)
+                    x = endX;
+            }
+            int boundary = (int) Math.floor(previousY / size);
+            if (velocityY < 0 && y < boundary * size) { // Crossed into the row below, landing is checked before that
+                for (int column = firstColumn(x); column <= lastColumn(x); column++)
+                    addEntry(LAND, column, boundary);
+            }
+            addCells(x, y, visited);
+        }
+        tailColumn.add((int) Math.floor(x / size));
+        tailRow.add((int) Math.floor(y / size));
+    }
+
+    private void addCells(double x, double y, IntArray visited) {
+        double size = TileCollisionMap.TILE_SIZE;
+        int lastRow = (int) Math.ceil((y + Hero.HEIGHT) / size) - 1;
+        for (int row = (int) Math.floor(y / size); row <= lastRow; row++) {
+            for (int column = firstColumn(x); column <= lastColumn(x); column++) {
+                int cell = (row << 16) ^ (column & 0xffff);
+                if (!visited.contains(cell)) {
+                    visited.add(cell);
+                    addEntry(FREE, column, row);
+                }
+            }
+        }
+    }
+
+    private static int firstColumn(double x) {
+        return (int) Math.floor((x - Hero.WIDTH / 2) / TileCollisionMap.TILE_SIZE);
+    }
+
+    private static int lastColumn(double x) {
+        return (int) Math.ceil((x + Hero.WIDTH / 2) / TileCollisionMap.TILE_SIZE) - 1;
+    }
+
+    private void addEntry(int kind, int column, int row) {
+        entryKind.add(kind);
+        entryColumn.add(column);
+        entryRow.add(row);
+        if (kind != LAND)
+            return;
+        for (int i = 0; i < landColumn.size; i++) {
+            if (landColumn.get(i) == column && landRow.get(i) == row)
+                return;
+        }
+        landColumn.add(column);
+        landRow.add(row);
+    }
+
+    private int addNode(int column, int row) {
+        int node = nodeColumns.size;
+        nodeOf[row * columns + column] = node;
+        nodeColumns.add(column);
+        nodeRows.add(row);
+        firstEdge.add(-1);
+        component.add(-1);
+        stamp.add(0);
+        reachability.addNode();
+        return node;
+    }
+
+    // F(v) from the notes
+    private void addEdgesOf(int node) {
+        int column = nodeColumns.get(node);
+        int row = nodeRows.get(node);
+        addEdge(node, getNode(column - 1, row));
+        addEdge(node, getNode(column + 1, row));
+        if (tileMap.getTile(column, row - 1) == TileCollisionMap.ONE_WAY) // Dropping through
+            addEdge(node, fall(column, row - 1));
+        // Ladders the hero can grab from here: the one it stands on, the one it is in and the ones right beside it
+        addLadderEdges(node, column, row - 1);
+        addLadderEdges(node, column, row);
+        addLadderEdges(node, column - 1, row);
+        addLadderEdges(node, column + 1, row);
+        for (int move = 0; move < moveGap.size; move++)
+            addEdge(node, follow(move, column, row));
+    }
+
+    // On a ladder the hero can get to its top, fall off its bottom or step aside onto a ledge at any height
+    private void addLadderEdges(int node, int column, int row) {
+        if (!isLadder(column, row))
+            return;
+        int bottom = row;
+        while (isLadder(column, bottom - 1))
+            bottom--;
+        int top = row;
+        while (isLadder(column, top + 1))
+            top++;
+        addEdge(node, getNode(column, top + 1));
+        addEdge(node, fall(column, bottom));
+        for (int ladderRow = bottom; ladderRow <= top; ladderRow++) {
+            addEdge(node, getNode(column - 1, ladderRow));
+            addEdge(node, getNode(column + 1, ladderRow));
+        }
+    }
+
+    private boolean isLadder(int column, int row) {
+        return tileMap.contains(column, row) && tileMap.getTile(column, row) == TileCollisionMap.LADDER;
+    }
+
+    // The node the hero ends up in after the move, or -1 if it bumps into something. Has to be called for every move
+    // of a node in order, see baseMove.
+    private int follow(int move, int column, int row) {
+        movePassed[move] = 0;
+        moveEnded[move] = false;
+        int gap = moveGap.get(move);
+        if (gap != 0 && (!isPassable(column + gap, row) || getNode(column + gap, row) >= 0))
+            return -1; // There is no edge to walk off
+        int start = moveStart.get(move);
+        int passed = 0;
+        int base = baseMove.get(move);
+        if (base >= 0) {
+            int shared = sharedEntries.get(move);
+            if (moveEnded[base] && movePassed[base] < shared) // Ends on the same entry
+                return endMove(move, movePassed[base], moveEnd[base]);
+            passed = Math.min(shared, movePassed[base]);
+        }
+        int[] kinds = entryKind.items;
+        int[] entryColumns = entryColumn.items;
+        int[] entryRows = entryRow.items;
+        int end = moveStart.get(move + 1);
+        for (int i = start + passed; i < end; i++) {
+            int x = column + entryColumns[i];
+            int y = row + entryRows[i];
+            if (kinds[i] == LAND) {
+                int node = getNode(x, y);
+                if (node >= 0)
+                    return endMove(move, i - start, node);
+            } else if (!isPassable(x, y)) {
+                return endMove(move, i - start, -1);
+            }
+        }
+        movePassed[move] = end - start;
+        return fall(column + tailColumn.get(move), row + tailRow.get(move));
+    }
+
+    private int endMove(int move, int passed, int node) {
+        movePassed[move] = passed;
+        moveEnded[move] = true;
+        moveEnd[move] = node;
+        return node;
+    }
+
+    // Falling straight down from a passable cell
+    private int fall(int column, int row) {
+        return tileMap.contains(column, row) ? landing[row * columns + column] : -1;
+    }
+
+    // Where falls from the column land, from row up to the first tile that isn't passable. Has to be called whenever
+    // a node of the column comes or goes, from its row. Ladders don't change what is passable.
+    private void updateLanding(int column, int row) {
+        for (; row < rows && isPassable(column, row); row++) {
+            int tile = row * columns + column;
+            landing[tile] = nodeOf[tile] >= 0 ? nodeOf[tile] : fall(column, row - 1);
+        }
+    }
+
+    private void addEdge(int from, int to) {
+        if (to < 0 || to == from)
+            return;
+        int[] next = nextEdge.items;
+        int[] targets = edgeTarget.items;
+        for (int edge = firstEdge.get(from); edge >= 0; edge = next[edge]) {
+            if (targets[edge] == to)
+                return;
+        }
+        edgeTarget.add(to);
+        nextEdge.add(firstEdge.get(from));
+        firstEdge.set(from, edgeTarget.size - 1);
+        edgeCount++;
+    }
+
+    private void clearEdgesOf(int node) {
+        for (int edge = firstEdge.get(node); edge >= 0; edge = nextEdge.get(edge))
+            edgeCount--;
+        firstEdge.set(node, -1);
+    }
+
+    // Adds ladders until every node can get to every other one, or no ladder can join what is left, and returns how
+    // many were added to the tile map
+    public int repair() {
+        int placed = laddersPlaced;
+        for (int round = 0; round < MAX_ROUNDS && componentCount > 1; round++) {
+            if (placeLadders() == 0)
+                break;
+            findComponents();
+        }
+        return laddersPlaced - placed;
+    }
+
+    // One round of repair. The biggest component is the main one and every other one gets a ladder, best to a component
+    // the main one can reach when it can't be reached from there, and to one that can reach the main one when it can't
+    // get there, so it ends up in the main one. Any other component will do when there is nothing like that around.
+    private int placeLadders() {
+        int count = componentCount;
+        int[] components = component.items;
+        int[] next = nextEdge.items;
+        int[] targets = edgeTarget.items;
+        int nodeCount = nodeColumns.size;
+        int[] sizes = new int[count];
+        LongArray forward = new LongArray(); // Edges between components, as source << 32 | target
+        LongArray backward = new LongArray(); // The same as target << 32 | source
+        for (int node = 0; node < nodeCount; node++) {
+            int from = components[node];
+            if (from < 0)
+                continue;
+            sizes[from]++;
+            for (int edge = firstEdge.get(node); edge >= 0; edge = next[edge]) {
+                int to = components[targets[edge]];
+                if (from != to) {
+                    forward.add((long) from << 32 | to);
+                    backward.add((long) to << 32 | from);
+                }
+            }
+        }
+        int main = 0;
+        for (int i = 1; i < count; i++) {
+            if (sizes[i] > sizes[main])
+                main = i;
+        }
+        boolean[] reached = reach(main, forward.toArray(), count); // The main component can get there
+        boolean[] reaches = reach(main, backward.toArray(), count); // And from there to the main component
+        // The best ladder for each component, as its score (the length, plus a penalty if it doesn't join the main
+        // component) and the column and rows it goes from and to
+        int[] scores = new int[count];
+        int[] ladderColumns = new int[count];
+        int[] bottoms = new int[count];
+        int[] tops = new int[count];
+        Arrays.fill(scores, Integer.MAX_VALUE);
+        for (int node = 0; node < nodeCount; node++) {
+            int own = components[node];
+            if (own == main || own < 0)
+                continue;
+            int column = nodeColumns.get(node);
+            int row = nodeRows.get(node);
+            if (tileMap.getTile(column, row) == TileCollisionMap.EMPTY) { // Up from here to beside another component
+                for (int top = row + 1; top - row < scores[own] && isEmpty(column, top); top++) {
+                    for (int side = -1; side <= 1; side += 2) {
+                        int other = getNode(column + side, top);
+                        if (other < 0 || components[other] == own)
+                            continue;
+                        int score = score(own, components[other], top - row, reached, reaches);
+                        if (score < scores[own]) {
+                            scores[own] = score;
+                            ladderColumns[own] = column;
+                            bottoms[own] = row;
+                            tops[own] = top;
+                        }
+                    }
+                }
+            }
+            for (int side = -1; side <= 1; side += 2) { // Up from another component to beside here
+                int ladderColumn = column + side;
+                for (int bottom = row; row - bottom < scores[own] && isEmpty(ladderColumn, bottom); bottom--) {
+                    int below = getNode(ladderColumn, bottom);
+                    if (below < 0)
+                        continue;
+                    if (bottom != row && components[below] != own) {
+                        int score = score(own, components[below], row - bottom, reached, reaches);
+                        if (score < scores[own]) {
+                            scores[own] = score;
+                            ladderColumns[own] = ladderColumn;
+                            bottoms[own] = bottom;
+                            tops[own] = row;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        // Shortest first, as the notes say. Ladders between what earlier ones already joined are left out: the nodes in
+        // and beside each ladder get their edges as it goes in and reachability is told about the new ones, which is
+        // enough to tell what the round joined. The rest of the nodes a ladder affects, mostly the ones whose jumps and
+        // falls end on it, get their edges again once the round is over, each node once however many ladders it is
+        // close to. Edges that went away are still there for reachability until findComponents.
+        epoch++;
+        queue.clear();
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++)
+            order[i] = (long) scores[i] << 32 | i;
+        Arrays.sort(order);
+        int placed = 0;
+        for (long key : order) {
+            int own = (int) key;
+            if (scores[own] == Integer.MAX_VALUE)
+                break;
+            int column = ladderColumns[own];
+            int bottom = bottoms[own];
+            int top = tops[own];
+            if (!canPlaceLadder(column, bottom, top))
+                continue; // An earlier ladder of this round took the way, the next round will look again
+            int lower = getNode(column, bottom);
+            int upper = getNode(column - 1, top);
+            if (upper < 0 || reachability.find(upper) == reachability.find(lower))
+                upper = getNode(column + 1, top);
+            if (upper < 0 || reachability.find(upper) == reachability.find(lower))
+                continue;
+            placeLadder(column, bottom, top);
+            updateEdgesAround(column, bottom, top);
+            placed++;
+        }
+        for (int i = 0; i < queue.size; i++) {
+            int node = queue.get(i);
+            if (isBuried(node))
+                continue; // By a later ladder of the round
+            clearEdgesOf(node);
+            addEdgesOf(node);
+        }
+        return placed;
+    }
+
+    // Components that can be got to from start following the edges, which are source << 32 | target
+    private static boolean[] reach(int start, long[] edges, int count) {
+        Arrays.sort(edges);
+        boolean[] found = new boolean[count];
+        IntArray pending = new IntArray();
+        found[start] = true;
+        pending.add(start);
+        while (pending.size > 0) {
+            int from = pending.pop();
+            // First edge out of from, binarySearch can't tell which of several equal keys it finds
+            int low = 0;
+            int high = edges.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (edges[middle] >>> 32 < from)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            for (int i = low; i < edges.length && edges[i] >>> 32 == from; i++) {
+                int to = (int) edges[i];
+                if (!found[to]) {
+                    found[to] = true;
+                    pending.add(to);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int score(int own, int other, int length, boolean[] reached, boolean[] reaches) {
+        boolean joinsMain = (reached[own] || reached[other]) && (reaches[own] || reaches[other]);
+        return joinsMain ? length : length + NOT_WANTED;
+    }
+
+    private boolean canPlaceLadder(int column, int bottom, int top) {
+        if (getNode(column, bottom) < 0 || getNode(column, top) >= 0)
+            return false;
+        for (int row = bottom; row <= top; row++) {
+            if (!isEmpty(column, row))
+                return false;
+        }
+        return true;
+    }
+
+    // Ladder tiles from bottom to top - 1, so the hero can stand at top. Marks the nodes whose edges the ladder can
+    // change, once they get their edges again the graph is as if it had been built with the ladder.
+    private void placeLadder(int column, int bottom, int top) {
+        for (int row = bottom; row < top; row++)
+            tileMap.setTile(column, row, TileCollisionMap.LADDER);
+        int ladderBottom = getNode(column, bottom);
+        int ladderTop = addNode(column, top);
+        component.set(ladderTop, component.get(ladderBottom));
+        // On top of another ladder the node at the bottom is in the middle of a longer one now
+        boolean buried = isLadder(column, bottom - 1);
+        if (buried) {
+            nodeOf[bottom * columns + column] = -1;
+            clearEdgesOf(ladderBottom);
+        }
+        updateLanding(column, buried ? bottom : top);
+        laddersPlaced++;
+        // Whoever can grab the ladder, which may have joined others in the same column, and the ladders beside the
+        // nodes that came and went, as they can be stepped onto from them
+        markLadder(column, bottom);
+        markLadder(column - 1, top);
+        markLadder(column + 1, top);
+        if (buried) {
+            markLadder(column - 1, bottom);
+            markLadder(column + 1, bottom);
+        }
+        // Moves that can land on the new node now, and whoever falls down this column from above
+        for (int i = 0; i < landColumn.size; i++) {
+            mark(getNode(column - landColumn.get(i), top - landRow.get(i)));
+            if (buried)
+                mark(getNode(column - landColumn.get(i), bottom - landRow.get(i)));
+        }
+        for (int row = buried ? bottom : top; row < rows && isPassable(column, row); row++) {
+            mark(getNode(column - 1, row));
+            mark(getNode(column, row));
+            mark(getNode(column + 1, row));
+            for (int move = 0; move < moveGap.size; move++)
+                mark(getNode(column - tailColumn.get(move), row - tailRow.get(move)));
+        }
+    }
+
+    // Gives the nodes in and beside the ladder their edges right away and tells reachability about the new ones
+    private void updateEdgesAround(int column, int bottom, int top) {
+        for (int row = bottom; row <= top; row++) {
+            for (int side = -1; side <= 1; side++) {
+                int node = getNode(column + side, row);
+                if (node < 0)
+                    continue;
+                int oldEdges = firstEdge.get(node);
+                clearEdgesOf(node);
+                addEdgesOf(node);
+                for (int edge = firstEdge.get(node); edge >= 0; edge = nextEdge.get(edge)) {
+                    if (!hasEdge(oldEdges, edgeTarget.get(edge)))
+                        reachability.addEdge(node, edgeTarget.get(edge));
+                }
+            }
+        }
+    }
+
+    private boolean hasEdge(int firstEdge, int target) {
+        for (int edge = firstEdge; edge >= 0; edge = nextEdge.get(edge)) {
+            if (edgeTarget.get(edge) == target)
+                return true;
+        }
+        return false;
+    }
+
+    // The nodes with edges from the ladder at that tile, if any
+    private void markLadder(int column, int row) {
+        if (!isLadder(column, row))
+            return;
+        int bottom = row;
+        while (isLadder(column, bottom - 1))
+            bottom--;
+        int top = row;
+        while (isLadder(column, top + 1))
+            top++;
+        for (row = bottom; row <= top + 1; row++) {
+            mark(getNode(column - 1, row));
+            mark(getNode(column, row));
+            mark(getNode(column + 1, row));
+        }
+    }
+
+    private void mark(int node) {
+        if (node >= 0 && stamp.get(node) != epoch) {
+            stamp.set(node, epoch);
+            queue.add(node);
+        }
+    }
+
+    // Tarjan's algorithm without recursion
+    private void findComponents() {
+        int count = nodeColumns.size;
+        int[] index = new int[count]; // Order in which nodes were found, plus one so 0 means not found yet
+        int[] lowLink = new int[count];
+        int[] edgeOf = new int[count]; // Next edge to follow from each node on the call stack
+        boolean[] onStack = new boolean[count];
+        IntArray stack = new IntArray();
+        IntArray callStack = new IntArray();
+        int[] next = nextEdge.items;
+        int[] targets = edgeTarget.items;
+        int found = 0;
+        componentCount = 0;
+        for (int start = 0; start < count; start++) {
+            if (isBuried(start)) {
+                component.set(start, -1);
+                continue;
+            }
+            if (index[start] != 0)
+                continue;
+            callStack.add(start);
+            index[start] = lowLink[start] = ++found;
+            edgeOf[start] = firstEdge.get(start);
+            stack.add(start);
+            onStack[start] = true;
+            while (callStack.size > 0) {
+                int node = callStack.peek();
+                int edge = edgeOf[node];
+                if (edge >= 0) {
+                    edgeOf[node] = next[edge];
+                    int target = targets[edge];
+                    if (index[target] == 0) {
+                        callStack.add(target);
+                        index[target] = lowLink[target] = ++found;
+                        edgeOf[target] = firstEdge.get(target);
+                        stack.add(target);
+                        onStack[target] = true;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+                callStack.pop();
+                if (callStack.size > 0)
+                    lowLink[callStack.peek()] = Math.min(lowLink[callStack.peek()], lowLink[node]);
+                if (lowLink[node] == index[node]) { // node is the root of a component, the rest is above it in stack
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        component.set(member, componentCount);
+                    } while (member != node);
+                    componentCount++;
+                }
+            }
+        }
+        reachability.reset(count, component.items, componentCount);
+        for (int node = 0; node < count; node++) {
+            for (int edge = firstEdge.get(node); edge >= 0; edge = next[edge])
+                reachability.addEdge(node, targets[edge]);
+        }
+    }
+
+    // Whether the hero can get from one node to the other
+    public boolean isReachable(int from, int to) {
+        return reachability.isReachable(from, to);
+    }
+
+    private boolean isEmpty(int column, int row) {
+        return tileMap.contains(column, row) && tileMap.getTile(column, row) == TileCollisionMap.EMPTY;
+    }
+
+    private boolean isPassable(int column, int row) {
+        return tileMap.contains(column, row) && tileMap.getTile(column, row) != TileCollisionMap.SOLID;
+    }
+
+    // Whether the hero can stand right above the tile. Only the top of a ladder holds it.
+    private boolean isPlatform(int column, int row) {
+        if (!tileMap.contains(column, row))
+            return false;
+        byte tile = tileMap.getTile(column, row);
+        return tile == TileCollisionMap.SOLID || tile == TileCollisionMap.ONE_WAY
+                || (tile == TileCollisionMap.LADDER && !isLadder(column, row + 1));
+    }
+
+    // Nodes a ladder was placed on top of keep their ID, but have no edges or component
+    private boolean isBuried(int node) {
+        return nodeOf[nodeRows.get(node) * columns + nodeColumns.get(node)] != node;
+    }
+
+    // The node at that tile, or -1
+    public int getNode(int column, int row) {
+        return tileMap.contains(column, row) ? nodeOf[row * columns + column] : -1;
+    }
+
+    public int getNodeColumn(int node) {
+        return nodeColumns.get(node);
+    }
+
+    public int getNodeRow(int node) {
+        return nodeRows.get(node);
+    }
+
+    // Appends to out the nodes the hero can get to from node in one move
+    public void collectNeighbours(int node, IntArray out) {
+        for (int edge = firstEdge.get(node); edge >= 0; edge = nextEdge.get(edge))
+            out.add(edgeTarget.get(edge));
+    }
+
+    // Including the ones buried by ladders, see isBuried
+    public int getNodeCount() {
+        return nodeColumns.size;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    // Strongly connected components, 1 when every node can get to every other one
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    // -1 for buried nodes
+    public int getComponent(int node) {
+        return component.get(node);
+    }
+
+    public int getLaddersPlaced() {
+        return laddersPlaced;
+    }
+
+    public TileCollisionMap getTileMap() {
+        return tileMap;
+    }
+}
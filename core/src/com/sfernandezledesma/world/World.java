@@ -18,88 +18,361 @@
 package com.sfernandezledesma.world;
 
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
 import com.sfernandezledesma.entities.DynamicEntity;
 import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.entities.Hero;
 import com.sfernandezledesma.entities.StaticEntity;
+import com.sfernandezledesma.graphics.TileMapRenderer;
+import com.sfernandezledesma.input.Controls;
+import com.sfernandezledesma.input.ScriptedControls;
 import com.sfernandezledesma.physics.AABB;
 import com.sfernandezledesma.physics.CollisionQuadtree;
+import com.sfernandezledesma.physics.StaticCollisionIndex;
+import com.sfernandezledesma.physics.TileCollisionMap;
+import com.sfernandezledesma.physics.TileMap;
+import com.sfernandezledesma.utils.Log;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
 
 public class World {
+    // Sprites can be drawn a bit outside of their boxes, and dynamic entities are drawn between two positions
+    public static final double RENDER_MARGIN = 2 * TileMap.TILE_SIZE;
     private double width;
     private double height;
-    private HashSet<DynamicEntity> dynamicEntities = new HashSet<DynamicEntity>();
-    private HashSet<StaticEntity> staticEntities = new HashSet<StaticEntity>();
+    // Always sorted by ID, IDs grow with every new entity and removing keeps the order. Updates and everything else
+    // that goes through them happen in the same order on every run.
+    private Array<DynamicEntity> dynamicEntities = new Array<DynamicEntity>(true, 64);
+    private Array<StaticEntity> staticEntities = new Array<StaticEntity>(true, 64);
+    // Static entities never move, so they live in their own index that is built once after loading the level.
+    // The quadtree only holds dynamic entities and its updates don't depend on how much terrain there is.
+    private StaticCollisionIndex staticIndex;
+    private boolean staticIndexDirty = false;
     private CollisionQuadtree quadtree;
+    // Grid aligned terrain doesn't need entities at all. Streamed worlds have a ChunkedTileMap, the rest a dense one.
+    private TileMap tileMap;
+    private TileCollisionMap denseTileMap = null;
+    private TileMapRenderer tileMapRenderer = new TileMapRenderer();
+    // Tiles and static entities uploaded once to the GPU, null until bakeTerrain is called
+    private TerrainCache terrainCache = null;
     private AssetManager assetManager;
+    // Optional data oriented storage for the physics state of dynamic entities, see enableBodyStore
+    private DynamicBodyStore bodyStore = null;
+    // Only when dynamic entities are updated in parallel, see enableParallelIslands
+    private IslandSolver islandSolver = null;
+    private boolean quadtreeUpdatesDeferred = false;
+    // Only in worlds that stream their level, which then has its own tile map and static indexes by chunk
+    private ChunkStreamer streamer = null;
+    // Read by the hero, it has to be replaced before creating the level. Idle by default.
+    private Controls playerControls = new ScriptedControls();
+    // The last hero created, null until then
+    private Hero player = null;
+    // Reused every frame to find out what has to be drawn
+    private final AABB renderBox = new AABB(0, 0, 0, 0);
+    private final Array<Entity> entitiesToRender = new Array<Entity>(false, 64);
 
     public World(double width, double height, AssetManager assetManager) {
+        this(width, height, assetManager, CollisionQuadtree.STRICT);
+    }
+
+    public World(double width, double height, AssetManager assetManager, double quadtreeLooseness) {
         this.width = width;
         this.height = height;
-        quadtree = new CollisionQuadtree(0, new AABB(0, 0, width, height), null);
+        staticIndex = new StaticCollisionIndex(new AABB(0, 0, width, height), StaticCollisionIndex.DEFAULT_CELL_SIZE);
+        quadtree = new CollisionQuadtree(0, new AABB(0, 0, width, height), null, quadtreeLooseness);
+        denseTileMap = new TileCollisionMap((int) Math.ceil(width / TileMap.TILE_SIZE), (int) Math.ceil(height / TileMap.TILE_SIZE));
+        tileMap = denseTileMap;
         this.setAssetManager(assetManager);
     }
 
+    // A world that only loads the chunks of level around a focus, see ChunkStreamer and stream.
+    // The player controls have to be set before the first call to stream.
+    public World(Level level, int chunkRadius, AssetManager assetManager) {
+        width = level.getWidth();
+        height = level.getHeight();
+        staticIndex = new StaticCollisionIndex(new AABB(0, 0, 0, 0), StaticCollisionIndex.DEFAULT_CELL_SIZE); // Always empty
+        quadtree = new CollisionQuadtree(0, new AABB(0, 0, width, height), null);
+        quadtree.setUnbounded(true); // Entities leaving the level are kept, they may be coming back
+        setAssetManager(assetManager);
+        streamer = new ChunkStreamer(level, this, chunkRadius);
+        tileMap = streamer.getTileMap();
+    }
+
     public void addDynamicEntity(DynamicEntity entity) {
         getDynamicEntities().add(entity);
         quadtree.add(entity);
+        if (bodyStore != null)
+            entity.attachToBodyStore(bodyStore);
+    }
+
+    // Keeps positions, sizes, velocities and accelerations of all dynamic entities in packed arrays and integrates them
+    // in a single loop at the beginning of each update. Results are the same as letting each entity integrate itself,
+    // but updates are slower, see DynamicBodyStore.
+    public void enableBodyStore() {
+        if (bodyStore != null)
+            return;
+        bodyStore = new DynamicBodyStore(Math.max(16, dynamicEntities.size));
+        for (int i = 0; i < dynamicEntities.size; i++)
+            dynamicEntities.get(i).attachToBodyStore(bodyStore);
     }
 
+    // Updates groups of dynamic entities that can't touch each other in several threads, see IslandSolver.
+    // Results don't depend on the number of threads, but are not the same as updating them one by one.
+    public void enableParallelIslands(int threads) {
+        if (islandSolver != null)
+            islandSolver.dispose();
+        islandSolver = new IslandSolver(this, threads);
+    }
+
+    // Static entities are indexed in bulk by buildStaticIndex, or lazily on the next update or collision query.
+    // In a streamed world they go to their chunk instead, which indexes them when installed or on the next update.
     public void addStaticEntity(StaticEntity entity) {
+        if (streamer != null) {
+            streamer.addStaticEntity(entity);
+            return;
+        }
         getStaticEntities().add(entity);
-        quadtree.add(entity);
+        staticIndexDirty = true;
+    }
+
+    // Should be called once the level has been loaded
+    public void buildStaticIndex() {
+        staticIndex.build(staticEntities);
+        staticIndexDirty = false;
+    }
+
+    // Needs graphics, so headless worlds never call it. Should be called once the level has been loaded.
+    // Streamed worlds draw their terrain tile by tile, as chunks come and go.
+    public void bakeTerrain() {
+        if (streamer != null)
+            return;
+        if (staticIndexDirty)
+            buildStaticIndex();
+        if (terrainCache != null)
+            terrainCache.dispose();
+        terrainCache = new TerrainCache(tileMap, tileMapRenderer, staticEntities);
     }
 
+    // Appends to result the static and dynamic entities that may overlap box
+    public void collectPossibleCollidingEntities(AABB box, Array<Entity> result) {
+        if (staticIndexDirty)
+            buildStaticIndex();
+        collectPossibleCollidingStaticEntities(box, result);
+        quadtree.collectPossibleCollidingEntities(box, result);
+    }
+
+    // Only looks at the static index, which is safe to query from several threads once it has been built
+    public void collectPossibleCollidingStaticEntities(AABB box, Array<Entity> result) {
+        if (streamer != null)
+            streamer.collectPossibleCollidingStaticEntities(box, result);
+        else
+            staticIndex.collectPossibleCollidingEntities(box, result);
+    }
+
+    // Loads and unloads chunks around focus in a streamed world, does nothing otherwise. Must not be called while
+    // the world is being updated.
+    public void stream(AABB focus) {
+        if (streamer != null)
+            streamer.update(focus);
+    }
+
+    // Takes out of the world the dynamic entities the streamer doesn't keep active, it keeps them meanwhile
+    void sleepDynamicEntities(ChunkStreamer streamer) {
+        int kept = 0;
+        for (int i = 0; i < dynamicEntities.size; i++) {
+            DynamicEntity e = dynamicEntities.get(i);
+            if (streamer.isActive(e)) {
+                dynamicEntities.set(kept++, e);
+                continue;
+            }
+            e.getQuadtree().remove(e);
+            e.setQuadtree(null);
+            e.detachFromBodyStore();
+            streamer.putToSleep(e);
+        }
+        dynamicEntities.truncate(kept);
+    }
+
+    // Puts back entities taken out by sleepDynamicEntities. They are older than the newest ones in the world,
+    // so they are merged in to keep the entities sorted by ID.
+    void wakeDynamicEntities(Array<DynamicEntity> entities) {
+        Entity.sortByID(entities);
+        int i = dynamicEntities.size - 1;
+        int j = entities.size - 1;
+        Object[] items = dynamicEntities.ensureCapacity(entities.size);
+        dynamicEntities.size += entities.size;
+        for (int k = dynamicEntities.size - 1; j >= 0; k--) { // From the back, so nothing is overwritten before moving it
+            if (i >= 0 && ((Entity) items[i]).getID() > entities.get(j).getID())
+                items[k] = items[i--];
+            else
+                items[k] = entities.get(j--);
+        }
+        for (int k = 0; k < entities.size; k++) {
+            DynamicEntity e = entities.get(k);
+            quadtree.add(e);
+            if (bodyStore != null)
+                e.attachToBodyStore(bodyStore);
+        }
+    }
+
+    // Advances the simulation one tick, delta should always be the same (see FixedTimestep)
     public void update(float delta) {
-        for (DynamicEntity e : dynamicEntities) {
-            e.update(delta);
+        if (staticIndexDirty)
+            buildStaticIndex();
+        if (streamer != null)
+            streamer.updateStaticIndexes();
+        for (int i = 0; i < dynamicEntities.size; i++)
+            dynamicEntities.get(i).savePreviousPosition();
+        if (bodyStore != null)
+            bodyStore.integrate(delta);
+        if (islandSolver != null) {
+            islandSolver.update(dynamicEntities, delta);
+        } else {
+            for (int i = 0; i < dynamicEntities.size; i++) // Entities created meanwhile are updated too
+                dynamicEntities.get(i).update(delta);
         }
 
-        Iterator<DynamicEntity> it = dynamicEntities.iterator();
-        while (it.hasNext()) {
-            DynamicEntity e = it.next();
+        int kept = 0;
+        for (int i = 0; i < dynamicEntities.size; i++) {
+            DynamicEntity e = dynamicEntities.get(i);
             if (e.isToBeDestroyed()) {
-                it.remove();
+                e.detachFromBodyStore();
             } else {
                 e.setUpdating(false);
+                dynamicEntities.set(kept++, e);
             }
         }
-        // If static objects are being destroyed by the quadtree, something is wrong.
-        Iterator<StaticEntity> itStatic = staticEntities.iterator();
-        while (itStatic.hasNext()) {
-            StaticEntity e = itStatic.next();
-            if (e.isToBeDestroyed()) {
-                Gdx.app.log("WORLD ERROR", "A static object has been removed!");
-                itStatic.remove();
-            }
+        dynamicEntities.truncate(kept);
+        // If static objects are being destroyed by the index, something is wrong.
+        kept = 0;
+        for (int i = 0; i < staticEntities.size; i++) {
+            StaticEntity e = staticEntities.get(i);
+            if (e.isToBeDestroyed())
+                Log.log("WORLD ERROR", "A static object has been removed!");
+            else
+                staticEntities.set(kept++, e);
         }
+        staticEntities.truncate(kept);
+        playerControls.endTick();
     }
 
-    public void render(SpriteBatch batch) {
-        for (Entity e : staticEntities)
-            e.render(batch);
-        for (Entity e : dynamicEntities)
-            e.render(batch);
+    // Only draws what is inside view, asking the indexes instead of going through every entity. Begins and ends
+    // the batch itself, because a baked terrain has to be drawn outside of it.
+    // Dynamic entities are drawn between their previous and current positions, alpha being FixedTimestep.getAlpha
+    public void render(SpriteBatch batch, float alpha, AABB view) {
+        if (staticIndexDirty)
+            buildStaticIndex();
+        renderTerrain(batch, view);
+        entitiesToRender.clear();
+        quadtree.collectPossibleCollidingEntities(renderBox, entitiesToRender);
+        for (int i = 0; i < entitiesToRender.size; i++)
+            entitiesToRender.get(i).render(batch, alpha);
+        batch.end();
     }
 
-    public Collection<DynamicEntity> getDynamicEntities() {
+    // Same, but the dynamic entities come from a snapshot, so the world can be updated in another thread meanwhile.
+    // The tiles and static entities it reads only change after the level has been loaded when a streamed world loads
+    // or unloads chunks, which happens in stream(), between updates.
+    public void render(SpriteBatch batch, RenderSnapshot snapshot, AABB view) {
+        renderTerrain(batch, view);
+        snapshot.render(batch);
+        batch.end();
+    }
+
+    // Draws the tiles and the static entities, and leaves the batch begun
+    private void renderTerrain(SpriteBatch batch, AABB view) {
+        renderBox.set(view.getX() - RENDER_MARGIN, view.getY() - RENDER_MARGIN,
+                view.getWidth() + 2 * RENDER_MARGIN, view.getHeight() + 2 * RENDER_MARGIN);
+        if (terrainCache != null) {
+            terrainCache.render(batch.getProjectionMatrix(), renderBox);
+            batch.begin();
+            return;
+        }
+        batch.begin();
+        tileMapRenderer.render(batch, tileMap, renderBox);
+        entitiesToRender.clear();
+        collectPossibleCollidingStaticEntities(renderBox, entitiesToRender);
+        for (int i = 0; i < entitiesToRender.size; i++)
+            entitiesToRender.get(i).render(batch);
+    }
+
+    public void dispose() {
+        if (streamer != null)
+            streamer.dispose();
+        if (terrainCache != null)
+            terrainCache.dispose();
+        if (islandSolver != null)
+            islandSolver.dispose();
+    }
+
+    public Array<DynamicEntity> getDynamicEntities() {
         return dynamicEntities;
     }
 
-    public Collection<StaticEntity> getStaticEntities() {
+    public Array<StaticEntity> getStaticEntities() {
         return staticEntities;
     }
 
+    public StaticCollisionIndex getStaticIndex() {
+        return staticIndex;
+    }
+
+    // Only contains dynamic entities
     public CollisionQuadtree getQuadtree() {
         return quadtree;
     }
 
+    public TileMap getTileMap() {
+        return tileMap;
+    }
+
+    // Null in streamed worlds, their tiles come from the level chunk by chunk
+    public TileCollisionMap getDenseTileMap() {
+        return denseTileMap;
+    }
+
+    public TileMapRenderer getTileMapRenderer() {
+        return tileMapRenderer;
+    }
+
+    public TerrainCache getTerrainCache() {
+        return terrainCache;
+    }
+
+    // Null unless the world was created to stream a level
+    public ChunkStreamer getStreamer() {
+        return streamer;
+    }
+
+    public DynamicBodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    public boolean areQuadtreeUpdatesDeferred() {
+        return quadtreeUpdatesDeferred;
+    }
+
+    public void setQuadtreeUpdatesDeferred(boolean quadtreeUpdatesDeferred) {
+        this.quadtreeUpdatesDeferred = quadtreeUpdatesDeferred;
+    }
+
+    public Controls getPlayerControls() {
+        return playerControls;
+    }
+
+    public void setPlayerControls(Controls playerControls) {
+        this.playerControls = playerControls;
+    }
+
+    public Hero getPlayer() {
+        return player;
+    }
+
+    public void setPlayer(Hero player) {
+        this.player = player;
+    }
+
     public double getWidth() {
         return width;
     }
@@ -0,0 +1,117 @@
+/*
+ * WorldChunk.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Array;
+import com.sfernandezledesma.entities.Entity;
+import com.sfernandezledesma.entities.StaticEntity;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.StaticCollisionIndex;
+import com.sfernandezledesma.physics.TileCollisionMap;
+
+// A square region of a streamed level, see ChunkStreamer. Has its own copy of the tiles and its own index for the
+// static entities whose bottom left corner is inside it. They can stick out to the right and up, so the index
+// covers the chunk and its neighbours in those directions.
+public class WorldChunk {
+    private final int chunkColumn;
+    private final int chunkRow;
+    private final int size;
+    private final byte[] tiles;
+    private final Array<StaticEntity> staticEntities = new Array<StaticEntity>(true, 16);
+    private final StaticCollisionIndex staticIndex;
+    private boolean staticIndexDirty = false;
+    private boolean tilesChanged = false;
+
+    // size is in tiles
+    public WorldChunk(int chunkColumn, int chunkRow, int size) {
+        this.chunkColumn = chunkColumn;
+        this.chunkRow = chunkRow;
+        this.size = size;
+        tiles = new byte[size * size];
+        double pixels = size * TileCollisionMap.TILE_SIZE;
+        staticIndex = new StaticCollisionIndex(new AABB(chunkColumn * pixels, chunkRow * pixels, 2 * pixels, 2 * pixels),
+                StaticCollisionIndex.DEFAULT_CELL_SIZE);
+    }
+
+    // Copies its tiles from the level. Runs in the streamer's thread, before the chunk is used by the world.
+    void load(Level level) {
+        int firstColumn = chunkColumn * size;
+        int firstRow = chunkRow * size;
+        int width = Math.min(size, level.getColumns() - firstColumn);
+        int height = Math.min(size, level.getRows() - firstRow);
+        if (width > 0 && height > 0) // Chunks on the right and top borders may be partly outside of the level
+            level.copyTiles(firstColumn, firstRow, width, height, tiles, size);
+    }
+
+    // column and row relative to the chunk
+    public byte getTile(int column, int row) {
+        return tiles[row * size + column];
+    }
+
+    public void setTile(int column, int row, byte tile) {
+        tiles[row * size + column] = tile;
+        tilesChanged = true;
+    }
+
+    // Whether reloading it from the level would lose something, in that case the streamer keeps it when unloaded.
+    // Its static entities come from the level, so they are created again.
+    public boolean hasOwnState() {
+        return tilesChanged;
+    }
+
+    // The tiles placed by the level spawns are the level's own, reloading the chunk places them again
+    void clearTilesChanged() {
+        tilesChanged = false;
+    }
+
+    void addStaticEntity(StaticEntity entity) {
+        staticEntities.add(entity);
+        staticIndexDirty = true;
+    }
+
+    void buildStaticIndex() {
+        staticIndex.build(staticEntities);
+        staticIndexDirty = false;
+    }
+
+    // Static entities added since the index was built are indexed now. Only the streamer calls it, when installing
+    // the chunk and before each world update.
+    void updateStaticIndex() {
+        if (staticIndexDirty)
+            buildStaticIndex();
+    }
+
+    // Never changes the index, so it can be called from the update threads and the render thread at the same time.
+    // Static entities added since the last updateStaticIndex aren't found yet.
+    public void collectPossibleCollidingStaticEntities(AABB box, Array<Entity> result) {
+        staticIndex.collectPossibleCollidingEntities(box, result);
+    }
+
+    public Array<StaticEntity> getStaticEntities() {
+        return staticEntities;
+    }
+
+    public int getChunkColumn() {
+        return chunkColumn;
+    }
+
+    public int getChunkRow() {
+        return chunkRow;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * DynamicBodyStoreTest.java
+ * Copyright 2017 Sebastian Fernandez Ledesma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sfernandezledesma.world;
+
+
+import com.badlogic.gdx.utils.Array;
+import com.sfernandezledesma.entities.DynamicEntity;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.input.ScriptedControls;
+import com.sfernandezledesma.physics.AABB;
+import com.sfernandezledesma.physics.TileMap;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// The same scene updated with and without World.enableBodyStore has to end up in exactly the same state
+public class DynamicBodyStoreTest {
+    private static final float DELTA = 1f / 60;
+    private static final int TICKS = 600;
+
+    @Test
+    public void sameAsEntitiesIntegratingThemselves() {
+        Level level = level(64, 48, 42);
+        World plain = dense(level);
+        World stored = dense(level);
+        stored.enableBodyStore();
+        for (int tick = 0; tick < TICKS; tick++) {
+            plain.update(DELTA);
+            stored.update(DELTA);
+            assertSameBodies(tick, plain.getDynamicEntities(), stored.getDynamicEntities());
+        }
+    }
+
+    // Entities leave the store when they go dormant and come back when they wake up
+    @Test
+    public void sameWhenStreamed() {
+        Level level = level(512, 48, 7);
+        World plain = streamed(level);
+        World stored = new World(level, 1, null);
+        stored.enableBodyStore();
+        stored.setPlayerControls(script());
+        AABB focus = new AABB(0, 0, 0, 0);
+        for (int tick = 0; tick < TICKS; tick++) {
+            stream(plain, focus);
+            stream(stored, focus);
+            plain.update(DELTA);
+            stored.update(DELTA);
+            assertSameBodies(tick, plain.getDynamicEntities(), stored.getDynamicEntities());
+        }
+        plain.dispose();
+        stored.dispose();
+    }
+
+    // A closed level with a few platforms, the hero and walls moving in random directions
+    private static Level level(int columns, int rows, long seed) {
+        Random random = new Random(seed);
+        Level level = new Level("bodies", columns, rows);
+        for (int column = 0; column < columns; column++) {
+            level.setTile(column, 0, TileMap.SOLID);
+            level.setTile(column, rows - 1, TileMap.SOLID);
+            if (column % 12 < 6)
+                level.setTile(column, 4, TileMap.ONE_WAY);
+        }
+        for (int row = 0; row < rows; row++) {
+            level.setTile(0, row, TileMap.SOLID);
+            level.setTile(columns - 1, row, TileMap.SOLID);
+        }
+        level.addSpawn(EntityFactory.EntityName.HERO, 2 * TileMap.TILE_SIZE, TileMap.TILE_SIZE, 0, 0);
+        for (int row = 6; row < rows - 2; row += 3) {
+            for (int column = 3; column < columns - 2; column += 3)
+                level.addSpawn(EntityFactory.EntityName.WALL, column * TileMap.TILE_SIZE, row * TileMap.TILE_SIZE,
+                        random.nextInt(121) - 60, random.nextInt(121) - 60);
+        }
+        return level;
+    }
+
+    // Runs right, jumping now and then
+    private static ScriptedControls script() {
+        int[] script = new int[TICKS];
+        for (int tick = 0; tick < script.length; tick++)
+            script[tick] = ScriptedControls.RIGHT | (tick % 45 < 10 ? ScriptedControls.JUMP : 0);
+        return new ScriptedControls(script);
+    }
+
+    private static World dense(Level level) {
+        World world = new World(level.getWidth(), level.getHeight(), null);
+        world.setPlayerControls(script());
+        level.populate(world);
+        return world;
+    }
+
+    private static World streamed(Level level) {
+        World world = new World(level, 1, null);
+        world.setPlayerControls(script());
+        return world;
+    }
+
+    private static void stream(World world, AABB focus) {
+        if (world.getPlayer() != null)
+            focus.setPosition(world.getPlayer().getBox().centerX(), world.getPlayer().getBox().centerY());
+        world.stream(focus);
+        world.getStreamer().finishLoading();
+    }
+
+    private static void assertSameBodies(int tick, Array<DynamicEntity> expected, Array<DynamicEntity> actual) {
+        assertEquals("Entities at tick " + tick, expected.size, actual.size);
+        for (int i = 0; i < expected.size; i++) {
+            DynamicEntity e = expected.get(i);
+            DynamicEntity a = actual.get(i);
+            String body = "Body " + i + " at tick " + tick;
+            assertEquals(body, e.getX(), a.getX(), 0);
+            assertEquals(body, e.getY(), a.getY(), 0);
+            assertEquals(body, e.getBox().getWidth(), a.getBox().getWidth(), 0);
+            assertEquals(body, e.getBox().getHeight(), a.getBox().getHeight(), 0);
+            assertEquals(body, e.getVelocityX(), a.getVelocityX(), 0);
+            assertEquals(body, e.getVelocityY(), a.getVelocityY(), 0);
+        }
+    }
+}
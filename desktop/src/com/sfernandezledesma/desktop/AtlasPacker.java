@@ -0,0 +1,149 @@
+package com.sfernandezledesma.desktop;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Cuts the regions the game uses out of the source sprite sheets and packs them in texture atlases, in the format
+// TextureAtlas reads. Region names are the ones in com.sfernandezledesma.graphics.Assets.
+// Usage: AtlasPacker [sourceDir] [outputDir], run from the root of the project by gradlew desktop:packAtlas
+public class AtlasPacker {
+    // Empty space around each region, filled repeating its border so filtering never picks the neighbours
+    private static final int PADDING = 1;
+    private static final int MAX_SIZE = 2048;
+
+    private static class Slice {
+        String name;
+        int index;
+        int x;
+        int y;
+        int width;
+        int height;
+        BufferedImage image;
+        int packedX;
+        int packedY;
+
+        Slice(String name, int index, int x, int y, int width, int height) {
+            this.name = name;
+            this.index = index;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static void main(String[] arg) throws IOException {
+        File sourceDir = new File(arg.length > 0 ? arg[0] : "desktop/atlas");
+        File outputDir = new File(arg.length > 1 ? arg[1] : "android/assets/atlas");
+        outputDir.mkdirs();
+
+        // Everything the playground needs. A level that needs other regions gets an atlas of its own, so it can be
+        // streamed while the previous one is being played.
+        List<Slice> game = new ArrayList<Slice>();
+        game.add(new Slice("ground", -1, 16, 96, 16, 16));
+        game.add(new Slice("one_way", -1, 32, 768, 16, 16));
+        game.add(new Slice("ladder", -1, 0, 192, 16, 16));
+        // One frame per GameAnimatedSprite.Frame
+        for (int frame = 0; frame < 6; frame++)
+            game.add(new Slice("hero", frame, 416 + 16 * frame, 16, 16, 16));
+        pack(new File(sourceDir, "simples_pimples.png"), game, outputDir, "game");
+    }
+
+    private static void pack(File source, List<Slice> slices, File outputDir, String name) throws IOException {
+        BufferedImage sheet = ImageIO.read(source);
+        for (Slice slice : slices)
+            slice.image = sheet.getSubimage(slice.x, slice.y, slice.width, slice.height);
+        int[] size = place(slices);
+        BufferedImage page = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+        for (Slice slice : slices)
+            draw(slice, page);
+        ImageIO.write(page, "png", new File(outputDir, name + ".png"));
+        writeAtlas(new File(outputDir, name + ".atlas"), name + ".png", size, slices);
+        System.out.println("Packed " + slices.size() + " regions of " + source.getName() + " in " + name + ".png, "
+                + size[0] + "x" + size[1] + " instead of " + sheet.getWidth() + "x" + sheet.getHeight());
+    }
+
+    // Shelf packing, tallest slices first, in the smallest power of two page that fits them. Returns width and height.
+    private static int[] place(List<Slice> slices) {
+        List<Slice> sorted = new ArrayList<Slice>(slices);
+        Collections.sort(sorted, new Comparator<Slice>() {
+            @Override
+            public int compare(Slice a, Slice b) {
+                return b.height - a.height;
+            }
+        });
+        for (int width = 16; width <= MAX_SIZE; width *= 2) {
+            int x = 0;
+            int y = 0;
+            int shelfHeight = 0;
+            boolean fits = true;
+            for (Slice slice : sorted) {
+                int w = slice.width + 2 * PADDING;
+                int h = slice.height + 2 * PADDING;
+                if (w > width) {
+                    fits = false;
+                    break;
+                }
+                if (x + w > width) {
+                    x = 0;
+                    y += shelfHeight;
+                    shelfHeight = 0;
+                }
+                slice.packedX = x + PADDING;
+                slice.packedY = y + PADDING;
+                x += w;
+                shelfHeight = Math.max(shelfHeight, h);
+            }
+            int height = powerOfTwo(y + shelfHeight);
+            if (fits && height <= width)
+                return new int[]{width, height};
+        }
+        throw new IllegalArgumentException("Regions don't fit in a " + MAX_SIZE + "x" + MAX_SIZE + " page");
+    }
+
+    private static void draw(Slice slice, BufferedImage page) {
+        for (int y = -PADDING; y < slice.height + PADDING; y++) {
+            for (int x = -PADDING; x < slice.width + PADDING; x++) {
+                int sourceX = Math.max(0, Math.min(slice.width - 1, x));
+                int sourceY = Math.max(0, Math.min(slice.height - 1, y));
+                page.setRGB(slice.packedX + x, slice.packedY + y, slice.image.getRGB(sourceX, sourceY));
+            }
+        }
+    }
+
+    private static void writeAtlas(File file, String pageName, int[] size, List<Slice> slices) throws IOException {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            writer.print("\n" + pageName + "\n");
+            writer.print("size: " + size[0] + "," + size[1] + "\n");
+            writer.print("format: RGBA8888\n");
+            writer.print("filter: Nearest,Nearest\n");
+            writer.print("repeat: none\n");
+            for (Slice slice : slices) {
+                writer.print(slice.name + "\n");
+                writer.print("  rotate: false\n");
+                writer.print("  xy: " + slice.packedX + ", " + slice.packedY + "\n");
+                writer.print("  size: " + slice.width + ", " + slice.height + "\n");
+                writer.print("  orig: " + slice.width + ", " + slice.height + "\n");
+                writer.print("  offset: 0, 0\n");
+                writer.print("  index: " + slice.index + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static int powerOfTwo(int value) {
+        int result = 1;
+        while (result < value)
+            result *= 2;
+        return result;
+    }
+}
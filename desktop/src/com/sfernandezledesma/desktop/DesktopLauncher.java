@@ -10,6 +10,6 @@ public class DesktopLauncher {
         config.width = Platformer.getWindowWidth();
         config.height = Platformer.getWindowHeight();
         config.title = Platformer.getTitle();
-        new LwjglApplication(new Platformer(), config);
+        new LwjglApplication(new Platformer(new MappedLevelLoader()), config);
     }
 }
@@ -0,0 +1,35 @@
+package com.sfernandezledesma.desktop;
+
+import com.sfernandezledesma.graphics.NullSprite;
+import com.sfernandezledesma.input.ScriptedControls;
+import com.sfernandezledesma.world.SimulationRunner;
+import com.sfernandezledesma.world.TestLevels;
+import com.sfernandezledesma.world.World;
+
+// Runs the playground without a window nor a GPU, as fast as possible. Usage: HeadlessLauncher [ticks] [tickRate]
+public class HeadlessLauncher {
+    public static void main(String[] arg) {
+        int ticks = arg.length > 0 ? Integer.parseInt(arg[0]) : 100000;
+        int tickRate = arg.length > 1 ? Integer.parseInt(arg[1]) : 60;
+
+        World world = new World(512, 512, null);
+        // Run right for a second jumping now and then, climb, and come back
+        int[] script = new int[240];
+        for (int i = 0; i < script.length; i++) {
+            script[i] = i < 120 ? ScriptedControls.RIGHT : ScriptedControls.LEFT;
+            if (i % 40 == 0)
+                script[i] |= ScriptedControls.JUMP;
+            if (i >= 180)
+                script[i] |= ScriptedControls.UP;
+        }
+        world.setPlayerControls(new ScriptedControls(script));
+        TestLevels.playground(world, new NullSprite(16, 16, 0, 0), -10, -10);
+        world.buildStaticIndex();
+
+        SimulationRunner runner = new SimulationRunner(world, 1f / tickRate);
+        long nanos = runner.run(ticks);
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%d ticks in %.3f s: %.0f ticks/s, %.0fx real time",
+                ticks, seconds, ticks / seconds, runner.getElapsedSeconds() / seconds));
+    }
+}
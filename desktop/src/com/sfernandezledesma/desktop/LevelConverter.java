@@ -0,0 +1,181 @@
+package com.sfernandezledesma.desktop;
+
+import com.sfernandezledesma.Platformer;
+import com.sfernandezledesma.entities.EntityFactory;
+import com.sfernandezledesma.physics.TileCollisionMap;
+import com.sfernandezledesma.world.Level;
+import com.sfernandezledesma.world.WalkabilityGraph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Converts text levels to the binary format of com.sfernandezledesma.world.Level. A text level looks like:
+//   # Comments and empty lines are skipped
+//   name playground
+//   tiles
+//   ......H...
+//   ##########
+//   end
+//   spawn HERO 128 350
+//   spawn WALL 272 272 -10 -10
+//   repair
+// The first tile line is the top row. '.' is empty, '#' solid, '=' one way and 'H' ladder. Spawns take an
+// EntityFactory.EntityName, the position in pixels and optionally a velocity. With repair, ladders are added where the
+// hero couldn't get back from somewhere, see WalkabilityGraph.
+// Usage: LevelConverter [sourceDir] [outputDir], run from the root of the project by gradlew desktop:convertLevels.
+// Every .txt in sourceDir becomes a .lvl in outputDir.
+public class LevelConverter {
+    public static void main(String[] arg) throws IOException {
+        File sourceDir = new File(arg.length > 0 ? arg[0] : "desktop/levels");
+        File outputDir = new File(arg.length > 1 ? arg[1] : "android/assets/levels");
+        outputDir.mkdirs();
+        File[] sources = sourceDir.listFiles();
+        if (sources == null)
+            throw new IOException("Can't list " + sourceDir);
+        for (File source : sources) {
+            if (!source.getName().endsWith(".txt"))
+                continue;
+            String name = source.getName().substring(0, source.getName().length() - 4);
+            File output = new File(outputDir, name + ".lvl");
+            long start = System.nanoTime();
+            Level level = convert(source);
+            write(level, output);
+            System.out.println(String.format("Converted %s to %s: %dx%d tiles, %d spawns, %d bytes in %.1f ms",
+                    source.getName(), output.getName(), level.getColumns(), level.getRows(), level.getSpawnCount(),
+                    output.length(), (System.nanoTime() - start) / 1e6));
+        }
+    }
+
+    public static Level convert(File source) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), "UTF-8"));
+        try {
+            String name = null;
+            List<String> tileLines = null;
+            List<String[]> spawns = new ArrayList<String[]>();
+            List<Integer> spawnLines = new ArrayList<Integer>();
+            boolean readingTiles = false;
+            boolean repair = false;
+            int firstTileLine = 0;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (readingTiles) {
+                    if (line.trim().equals("end")) {
+                        readingTiles = false;
+                    } else {
+                        if (!tileLines.isEmpty() && line.length() != tileLines.get(0).length())
+                            throw error(source, lineNumber, "all tile lines must be as long");
+                        tileLines.add(line);
+                    }
+                    continue;
+                }
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] words = line.split("\\s+");
+                if (words[0].equals("name") && words.length == 2) {
+                    name = words[1];
+                } else if (words[0].equals("tiles") && words.length == 1 && tileLines == null) {
+                    tileLines = new ArrayList<String>();
+                    readingTiles = true;
+                    firstTileLine = lineNumber + 1;
+                } else if (words[0].equals("spawn") && (words.length == 4 || words.length == 6)) {
+                    spawns.add(words);
+                    spawnLines.add(lineNumber);
+                } else if (words[0].equals("repair") && words.length == 1) {
+                    repair = true;
+                } else {
+                    throw error(source, lineNumber, "can't understand \"" + line + "\"");
+                }
+            }
+            if (name == null || tileLines == null || tileLines.isEmpty() || readingTiles)
+                throw error(source, lineNumber, "a level needs a name and a tiles block closed by end");
+
+            int rows = tileLines.size();
+            Level level = new Level(name, tileLines.get(0).length(), rows);
+            for (int i = 0; i < rows; i++) {
+                String tileLine = tileLines.get(i);
+                for (int column = 0; column < tileLine.length(); column++) {
+                    byte tile = tile(tileLine.charAt(column));
+                    if (tile < 0)
+                        throw error(source, firstTileLine + i, "unknown tile '" + tileLine.charAt(column) + "'");
+                    level.setTile(column, rows - 1 - i, tile);
+                }
+            }
+            if (repair)
+                repair(level);
+            for (int i = 0; i < spawns.size(); i++) {
+                String[] words = spawns.get(i);
+                try {
+                    EntityFactory.EntityName type = EntityFactory.EntityName.valueOf(words[1]);
+                    float velocityX = words.length == 6 ? Float.parseFloat(words[4]) : 0;
+                    float velocityY = words.length == 6 ? Float.parseFloat(words[5]) : 0;
+                    level.addSpawn(type, Float.parseFloat(words[2]), Float.parseFloat(words[3]), velocityX, velocityY);
+                } catch (IllegalArgumentException e) {
+                    throw error(source, spawnLines.get(i), e.getMessage());
+                }
+            }
+            return level;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // The graph works on a tile map, the ladders are copied back to the level
+    private static void repair(Level level) {
+        int columns = level.getColumns();
+        int rows = level.getRows();
+        byte[] tiles = new byte[columns * rows];
+        level.copyTiles(0, 0, columns, rows, tiles, columns);
+        TileCollisionMap tileMap = new TileCollisionMap(columns, rows);
+        tileMap.setTiles(ByteBuffer.wrap(tiles));
+        long start = System.nanoTime();
+        WalkabilityGraph graph = new WalkabilityGraph(tileMap, Platformer.getTimeStep());
+        int ladders = graph.repair();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++)
+                level.setTile(column, row, tileMap.getTile(column, row));
+        }
+        System.out.println(String.format("Repaired %s with %d ladders in %.1f ms, %d parts can't be joined",
+                level.getName(), ladders, (System.nanoTime() - start) / 1e6, graph.getComponentCount() - 1));
+    }
+
+    public static void write(Level level, File output) throws IOException {
+        ByteBuffer buffer = level.write();
+        FileChannel channel = new FileOutputStream(output).getChannel();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static byte tile(char c) {
+        switch (c) {
+            case '.':
+                return TileCollisionMap.EMPTY;
+            case '#':
+                return TileCollisionMap.SOLID;
+            case '=':
+                return TileCollisionMap.ONE_WAY;
+            case 'H':
+                return TileCollisionMap.LADDER;
+            default:
+                return -1;
+        }
+    }
+
+    private static IOException error(File source, int lineNumber, String message) {
+        return new IOException(source.getName() + ":" + lineNumber + ": " + message);
+    }
+}
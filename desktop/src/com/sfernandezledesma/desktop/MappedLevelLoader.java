@@ -0,0 +1,38 @@
+package com.sfernandezledesma.desktop;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.sfernandezledesma.world.Level;
+import com.sfernandezledesma.world.LevelLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Memory maps level files, so the OS pages them in straight into the buffer the level is parsed from.
+// Files that only exist inside a jar are read whole.
+public class MappedLevelLoader implements LevelLoader {
+    @Override
+    public Level load(FileHandle file) {
+        File source = file.file();
+        if (!source.isFile())
+            return Level.load(file);
+        try {
+            return Level.read(map(source));
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Couldn't map level " + source, e);
+        }
+    }
+
+    public static MappedByteBuffer map(File source) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(source, "r");
+        try {
+            // The mapping stays valid after closing the file
+            return input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, source.length());
+        } finally {
+            input.close();
+        }
+    }
+}